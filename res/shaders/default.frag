@@ -5,11 +5,24 @@ in vec2 vertexTexcoord;
 
 out vec4 outColor;
 
-uniform sampler2D foo;
+// The variant is chosen by the defines which are inserted when the program is compiled
+#ifdef TEXTURED
 uniform sampler2D textureData;
+#endif
 
 void main() {
-  vec4 textureColor = texture(textureData, vertexTexcoord);
-  outColor = vertexColor * textureColor;
+#if defined(TEXT)
+  // Glyph atlases only define the coverage, the color comes from the text
+  outColor = vec4(vertexColor.rgb, vertexColor.a * texture(textureData, vertexTexcoord).a);
+#elif defined(TEXTURED)
+  outColor = vertexColor * texture(textureData, vertexTexcoord);
+#else
+  outColor = vertexColor;
+#endif
+#ifdef ALPHA_TEST
+  // Cut-out objects are drawn in the opaque pass, so their transparent pixels must not write the depth
+  if (outColor.a < 0.5) {
+    discard;
+  }
+#endif
 }
-
@@ -3,17 +3,20 @@
 in vec2 position;
 in vec4 color;
 in vec2 texcoord;
+in float depth;
 
 out vec4 vertexColor;
 out vec2 vertexTexcoord;
 
-uniform mat4 model;
-uniform mat4 view;
-uniform mat4 projection;
+// Shared by all programs, filled once per frame by the camera
+layout(std140) uniform Camera {
+  mat4 viewProjection;
+};
 
 void main() {
   vertexColor = color;
   vertexTexcoord = texcoord;
-  mat4 mvp = projection * view * model;
-  gl_Position = mvp * vec4(position, 0.0, 1.0);
+  gl_Position = viewProjection * vec4(position, 0.0, 1.0);
+  // The depth only encodes the draw order of the objects, so the depth test keeps it
+  gl_Position.z = depth * gl_Position.w;
 }
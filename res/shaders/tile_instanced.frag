@@ -0,0 +1,22 @@
+#version 150 core
+
+in vec4 vertexColor;
+in vec2 vertexTexcoord;
+flat in uint vertexLayer;
+
+out vec4 outColor;
+
+// Tiles are either drawn from a 2D texture (or atlas page) or from a layer of an array texture
+uniform sampler2D textureData;
+uniform sampler2DArray textureArray;
+uniform bool useTextureArray;
+
+void main() {
+  vec4 textureColor;
+  if (useTextureArray) {
+    textureColor = texture(textureArray, vec3(vertexTexcoord, float(vertexLayer)));
+  } else {
+    textureColor = texture(textureData, vertexTexcoord);
+  }
+  outColor = vertexColor * textureColor;
+}
@@ -0,0 +1,30 @@
+#version 150 core
+
+// Per vertex: corner of the unit quad
+in vec2 position;
+in vec2 texcoord;
+
+// Per instance: one tile of the iso grid
+in vec2 gridPosition;
+in uint textureIndex;
+in vec4 tint;
+in vec4 uvRect;
+
+out vec4 vertexColor;
+out vec2 vertexTexcoord;
+flat out uint vertexLayer;
+
+// Shared by all programs, filled once per frame by the camera
+layout(std140) uniform Camera {
+  mat4 viewProjection;
+};
+uniform vec2 tileSize;
+
+void main() {
+  vertexColor = tint;
+  vertexTexcoord = mix(uvRect.xy, uvRect.zw, texcoord);
+  vertexLayer = textureIndex;
+  gl_Position = viewProjection * vec4((gridPosition + position) * tileSize, 0.0, 1.0);
+  // Tiles are the ground, so they lie on the far plane behind every other object
+  gl_Position.z = gl_Position.w;
+}
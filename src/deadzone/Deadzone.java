@@ -1,6 +1,7 @@
 package deadzone;
 
 import deadzone.assets.AssetManager;
+import deadzone.graphics.GLStateCache;
 import deadzone.graphics.Renderer;
 import deadzone.scenes.AbstractScene;
 import org.lwjgl.glfw.GLFWErrorCallback;
@@ -12,7 +13,6 @@ import javax.swing.*;
 import java.nio.IntBuffer;
 import java.util.Objects;
 
-import static java.lang.Thread.sleep;
 import static org.lwjgl.glfw.Callbacks.glfwFreeCallbacks;
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.opengl.GL11.*;
@@ -95,33 +95,55 @@ public class Deadzone {
    */
   public void loop() throws InterruptedException {
     final long windowHandle = window.getHandle();
+    // From now on, the OpenGL context is owned by the render thread (if enabled)
+    if (Settings.renderThread) {
+      renderer.startRenderThread(windowHandle);
+    }
+    timer.start();
     // Run the primary loop until window is closed
     while ( !glfwWindowShouldClose(windowHandle) ) {
+      Profiler.beginFrame();
       // Update the game timer
+      Profiler.begin(Profiler.Zone.TIMER);
       timer.updateTimer();
+      Profiler.end();
       // Check for events like pressed keys and such
+      Profiler.begin(Profiler.Zone.POLL_EVENTS);
       glfwPollEvents();
+      Profiler.end();
       // Execute all content related game loop subroutines
+      Profiler.begin(Profiler.Zone.INPUT);
       input();
+      Profiler.end();
+      Profiler.begin(Profiler.Zone.UPDATE);
       update();
-      // Clear framebuffer to prepare the upcoming render loop
-      glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+      Profiler.end();
+      Profiler.begin(Profiler.Zone.RENDER);
       render();
-      // Swap color buffers
-      glfwSwapBuffers(windowHandle);
-      // Keep the target frame rate
-      if (Settings.targetFPS != -1) {
-        sleep(timer.getSleepTime());
+      Profiler.end();
+      // Swap color buffers (done by the render thread, if it's enabled)
+      if (!Settings.renderThread) {
+        Profiler.begin(Profiler.Zone.SWAP_BUFFERS);
+        glfwSwapBuffers(windowHandle);
+        Profiler.end();
       }
+      // Keep the target frame rate
+      Profiler.begin(Profiler.Zone.SLEEP);
+      timer.waitForNextFrame();
+      Profiler.end();
+      Profiler.endFrame();
     }
   }
   
   /**
    * Executed when the application will or shall be closed.
    */
-  public void shutdown() {
+  public void shutdown() throws InterruptedException {
     long windowHandle = window.getHandle();
   
+    // Draw the remaining frames and take the OpenGL context back from the render thread
+    renderer.stopRenderThread();
+    
     // Remove all graphic data from GPU
     renderer.dispose();
     
@@ -143,14 +165,22 @@ public class Deadzone {
   }
   
   /**
-   * Subroutine of the game loop which updates all data for the next frame
+   * Subroutine of the game loop which runs the simulation ticks which are due in this frame
+   * and updates all data for the next frame
    */
   public void update() {
-    AbstractScene.getActiveScene().updateScene();
+    final AbstractScene scene = AbstractScene.getActiveScene();
+    for (int tick = 0; tick < timer.getPendingTicks(); tick++) {
+      Profiler.begin(Profiler.Zone.TICK);
+      scene.runTick(timer.getTickSeconds());
+      Profiler.end();
+    }
+    scene.updateScene();
   }
   
   /**
-   * Subroutine of the game loop which renders the updated data for the next frame
+   * Subroutine of the game loop which renders the updated data for the next frame.
+   * If the render thread is enabled, the frame is only handed over to it.
    */
   public void render() {
     // Render the current frame
@@ -203,9 +233,10 @@ public class Deadzone {
     
     // Detect OpenGL thread and make bindings available for use
     GL.createCapabilities();
-    // Configure OpenGL
-    glEnable(GL_BLEND);
-    glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+    // Configure OpenGL (blending and the depth test are switched per render pass by the renderer)
+    GLStateCache.setBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+    // Objects of the same depth are drawn over each other in their draw order
+    glDepthFunc(GL_LEQUAL);
 
     // Set the base color of the application window
     float[] baseColor = Settings.baseColorRGBA;
@@ -249,8 +280,10 @@ public class Deadzone {
     // Tell STB to flip textures vertically, so that their origin is at bottom left instead of top left
     stbi_set_flip_vertically_on_load(false);
     
+    Profiler.begin(Profiler.Zone.LOAD_ASSETS);
     assets = new AssetManager();
     assets.loadAllAssets();
+    Profiler.end();
   }
   
   
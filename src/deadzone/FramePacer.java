@@ -0,0 +1,102 @@
+package deadzone;
+
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Keeps the game loop at the target frame rate by waiting until the deadline of each frame.
+ * The deadlines are a fixed interval apart, so the time a frame took and a late wake up are both compensated by the
+ * next wait. Most of the time is spent parked, the last part before the deadline is spent yielding, because parking
+ * usually wakes up too late. How late it wakes up is measured, so it's parked only as long as it can be woken in time.
+ */
+public class FramePacer {
+  
+  /** Time before the deadline which is always spent yielding instead of parking in nanoseconds */
+  private static final long spinNanos = 500_000L;
+  
+  /** Highest estimate of the park overshoot in nanoseconds, so a single preempted wake up doesn't make the next frames spin for long */
+  private static final long maxParkOvershootNanos = 2_000_000L;
+  
+  /** Duration of a frame in nanoseconds (0 if the frame rate is unlimited) */
+  private long frameNanos;
+  
+  /** Time the current frame shall end (System.nanoTime) */
+  private long deadline;
+  
+  /** Estimate how much later than requested parking wakes up in nanoseconds */
+  private long parkOvershootNanos = 0;
+  
+  
+  /**
+   * @param targetFps The frame rate to keep (-1 = unlimited)
+   */
+  public FramePacer(int targetFps) {
+    setTargetFps(targetFps);
+  }
+  
+  
+  public void setTargetFps(int targetFps) {
+    frameNanos = targetFps > 0 ? 1_000_000_000L / targetFps : 0;
+    reset();
+  }
+  
+  
+  /**
+   * Starts the deadlines from now, so the current frame gets the full frame time
+   */
+  public void reset() {
+    deadline = System.nanoTime() + frameNanos;
+  }
+  
+  
+  /**
+   * Waits until the deadline of the current frame and moves it to the end of the next frame
+   */
+  public void waitForNextFrame() {
+    if (frameNanos == 0) {
+      return;
+    }
+    long remaining = deadline - System.nanoTime();
+    // Park coarsely, as long as it wakes up in time for the deadline
+    while (remaining > spinNanos + parkOvershootNanos) {
+      final long parkNanos = remaining - spinNanos - parkOvershootNanos;
+      final long parkStart = System.nanoTime();
+      LockSupport.parkNanos(parkNanos);
+      final long now = System.nanoTime();
+      updateParkOvershoot(now - parkStart - parkNanos);
+      remaining = deadline - now;
+    }
+    // Yield for the rest of the time
+    while (remaining > 0) {
+      Thread.yield();
+      remaining = deadline - System.nanoTime();
+    }
+    deadline += frameNanos;
+    // If the loop fell behind by more than a frame, start over from now instead of rushing the missed frames
+    if (-remaining > frameNanos) {
+      deadline = System.nanoTime() + frameNanos;
+    }
+  }
+  
+  
+  /**
+   * Returns the estimate how much later than requested parking wakes up in nanoseconds
+   */
+  public long getParkOvershootNanos() {
+    return parkOvershootNanos;
+  }
+  
+  
+  /**
+   * Follows a longer overshoot immediately, so the next wake up is in time, and a shorter one slowly
+   */
+  private void updateParkOvershoot(long overshoot) {
+    overshoot = Math.max(0, Math.min(maxParkOvershootNanos, overshoot));
+    if (overshoot > parkOvershootNanos) {
+      parkOvershootNanos = overshoot;
+    } else {
+      parkOvershootNanos += (overshoot - parkOvershootNanos) / 16;
+    }
+  }
+  
+}
@@ -0,0 +1,114 @@
+package deadzone;
+
+
+/**
+ * Counts frame durations in logarithmic buckets with linear sub buckets, like an HDR histogram.
+ * Durations are counted in microseconds. Up to 128 microseconds every microsecond has its own bucket, above that each
+ * power of two is divided into 64 buckets, so a percentile is never off by more than 1/64 (~1.6%) of its value.
+ * Values can be removed again, so the histogram can follow a rolling window of frames.
+ */
+public class FrameTimeHistogram {
+  
+  /** Every power of two above the linear range is divided into 2^subBucketBits buckets */
+  private static final int subBucketBits = 6;
+  
+  /** Highest duration which is counted in microseconds (about 67 seconds), longer durations are counted as this one */
+  private static final long maxMicros = (1L << 26) - 1;
+  
+  /** Amount of values per bucket */
+  private final int[] counts = new int[getIndex(maxMicros) + 1];
+  
+  /** Amount of values in all buckets */
+  private int totalCount = 0;
+  
+  
+  /**
+   * Adds a duration in nanoseconds
+   */
+  public void add(long nanos) {
+    counts[getIndex(toMicros(nanos))]++;
+    totalCount++;
+  }
+  
+  
+  /**
+   * Removes a duration in nanoseconds, which must have been added before
+   */
+  public void remove(long nanos) {
+    counts[getIndex(toMicros(nanos))]--;
+    totalCount--;
+  }
+  
+  
+  /**
+   * Returns the amount of counted durations
+   */
+  public int getTotalCount() {
+    return totalCount;
+  }
+  
+  
+  /**
+   * Returns the duration in nanoseconds which is longer than or equal to the given percentage of all durations
+   * @param percentile 0-100
+   */
+  public long getPercentileNanos(double percentile) {
+    if (totalCount == 0) {
+      return 0;
+    }
+    final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+    long count = 0;
+    for (int index = 0; index < counts.length; index++) {
+      count += counts[index];
+      if (count >= rank) {
+        return getHighestMicros(index) * 1000L;
+      }
+    }
+    return maxMicros * 1000L;
+  }
+  
+  
+  /**
+   * Returns the average of the longest durations in nanoseconds, which make up the given percentage of all durations
+   * @param percentage 0-100
+   */
+  public long getLongestAverageNanos(double percentage) {
+    if (totalCount == 0) {
+      return 0;
+    }
+    final long amount = Math.max(1, (long) (percentage / 100.0 * totalCount));
+    long remaining = amount;
+    long sum = 0;
+    for (int index = counts.length - 1; index >= 0 && remaining > 0; index--) {
+      final long count = Math.min(counts[index], remaining);
+      sum += count * getHighestMicros(index);
+      remaining -= count;
+    }
+    return sum * 1000L / amount;
+  }
+  
+  
+  private static long toMicros(long nanos) {
+    return Math.max(0, Math.min(maxMicros, nanos / 1000L));
+  }
+  
+  
+  /**
+   * Returns the bucket of the given duration in microseconds
+   */
+  private static int getIndex(long micros) {
+    final int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(micros) - subBucketBits);
+    return (shift << subBucketBits) + (int) (micros >> shift);
+  }
+  
+  
+  /**
+   * Returns the longest duration in microseconds which is counted in the given bucket
+   */
+  private static long getHighestMicros(int index) {
+    final int shift = Math.max(0, (index >> subBucketBits) - 1);
+    final long subBucket = index - ((long) shift << subBucketBits);
+    return ((subBucket + 1) << shift) - 1;
+  }
+  
+}
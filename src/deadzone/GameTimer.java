@@ -9,8 +9,10 @@ public class GameTimer {
   
   /** Timestamp created when the game was started */
   private final double initialTimestamp;
-  /** The target FPS defined by user settings */
+  /** The target FPS defined by user settings (-1 = unlimited) */
   private int targetFps;
+  /** Waits at the end of each frame until the target FPS is reached */
+  private final FramePacer framePacer;
   /** The current real FPS value - may vary from target FPS if CPU is overloaded */
   private int fps;
   /** The amount of rendered frames since game start. Also, the number of the current frame */
@@ -19,15 +21,43 @@ public class GameTimer {
   private double currentTimestamp;
   /** The amount of elapsed seconds since game start */
   private int currentSecond;
-  /** (readonly) Amount of milliseconds we have to wait after each game loop to reach the defined target FPS */
-  private long sleepTime;
+  
+  /** Start of the current frame in nanoseconds (System.nanoTime) */
+  private long frameStartNanos;
+  /** Durations of the last frames in nanoseconds as ring buffer, the oldest one is at frameIndex once the window is full */
+  private final long[] frameNanos;
+  /** Index in frameNanos where the next duration is written */
+  private int frameIndex = 0;
+  /** Amount of durations in frameNanos */
+  private int frameCount = 0;
+  /** Sum of all durations in frameNanos */
+  private long frameNanosSum = 0;
+  /** Longest duration in frameNanos (-1 if it must be searched again, because the longest one left the window) */
+  private long maxFrameNanos = 0;
+  /** The durations in frameNanos, used to find the percentiles */
+  private final FrameTimeHistogram histogram = new FrameTimeHistogram();
+  
+  /** Duration of a simulation tick in nanoseconds (0 if the simulation is updated once per frame) */
+  private final long tickNanos;
+  /** Elapsed time which was not simulated yet in nanoseconds, always less than a tick after the ticks of the frame */
+  private long tickAccumulatorNanos = 0;
+  /** Amount of simulation ticks which have to run in the current frame */
+  private int pendingTicks = 0;
+  /** Amount of simulation ticks since game start */
+  private long tickCount = 0;
+  /** Amount of simulation ticks which were dropped, because a frame would have needed more than the maximum */
+  private long droppedTickCount = 0;
   
   
   public GameTimer(int targetFps) {
     currentTimestamp = initialTimestamp = createTimestamp();
     currentSecond = 0;
     currentFrame = 1;
-    setTargetFps(targetFps);
+    frameStartNanos = System.nanoTime();
+    frameNanos = new long[Math.max(1, Settings.frameStatsWindow)];
+    tickNanos = Settings.tickRate > 0 ? 1_000_000_000L / Settings.tickRate : 0;
+    this.targetFps = targetFps;
+    framePacer = new FramePacer(targetFps);
   }
   
   public double getInitialTimestamp() {
@@ -46,28 +76,109 @@ public class GameTimer {
     return targetFps;
   }
   
+  /**
+   * @return Frames per second of the average frame time of the last frames
+   */
   public int getFps() {
     return fps;
   }
   
+  /**
+   * @return Duration of the last frame in milliseconds
+   */
+  public double getFrameMillis() {
+    return frameCount == 0 ? 0 : frameNanos[(frameIndex + frameNanos.length - 1) % frameNanos.length] / 1e6;
+  }
+  
+  /**
+   * @return Average duration of the last frames in milliseconds
+   */
+  public double getAverageFrameMillis() {
+    return frameCount == 0 ? 0 : frameNanosSum / 1e6 / frameCount;
+  }
+  
+  /**
+   * @param percentile 0-100, like 50, 95 or 99
+   * @return Duration in milliseconds which the given percentage of the last frames didn't exceed (accurate to ~1.6%)
+   */
+  public double getPercentileFrameMillis(double percentile) {
+    return Math.min(histogram.getPercentileNanos(percentile), getMaxFrameNanos()) / 1e6;
+  }
+  
+  /**
+   * @return Duration of the longest of the last frames in milliseconds
+   */
+  public double getMaxFrameMillis() {
+    return getMaxFrameNanos() / 1e6;
+  }
+  
+  /**
+   * @return Frames per second of the average duration of the slowest 1% of the last frames
+   */
+  public double getOnePercentLowFps() {
+    final long nanos = Math.min(histogram.getLongestAverageNanos(1), getMaxFrameNanos());
+    return nanos == 0 ? 0 : 1e9 / nanos;
+  }
+  
+  /**
+   * @return Amount of simulation ticks which have to run in the current frame
+   */
+  public int getPendingTicks() {
+    return pendingTicks;
+  }
+  
+  /**
+   * @return Simulated time of a single tick in seconds (the duration of the last frame, if the simulation is updated once per frame)
+   */
+  public double getTickSeconds() {
+    return tickNanos > 0 ? tickNanos / 1e9 : getFrameMillis() / 1e3;
+  }
+  
+  /**
+   * @return Part of the time between the last two simulation ticks which has elapsed after the last one (0-1),
+   *         used to render the state between them
+   */
+  public float getInterpolationAlpha() {
+    return tickNanos > 0 ? (float) tickAccumulatorNanos / tickNanos : 1f;
+  }
+  
+  public long getTickCount() {
+    return tickCount;
+  }
+  
+  public long getDroppedTickCount() {
+    return droppedTickCount;
+  }
+  
+  /**
+   * @return Amount of last frames the frame time statistics are calculated from
+   */
+  public int getFrameStatsCount() {
+    return frameCount;
+  }
+  
   public double getCurrentTimestamp() {
     return currentTimestamp;
   }
   
+  public void setTargetFps(int targetFps) {
+    this.targetFps = targetFps;
+    framePacer.setTargetFps(targetFps);
+  }
+  
   /**
-   * @return Milliseconds we have to wait after each game loop to reach the target FPS
+   * Waits until the current frame has taken the frame time of the target FPS (returns immediately, if it's unlimited)
    */
-  public long getSleepTime() {
-    return sleepTime;
+  public void waitForNextFrame() {
+    framePacer.waitForNextFrame();
   }
   
-  public void setTargetFps(int targetFps) {
-    if (targetFps == -1) {
-      sleepTime = 1;
-    } else {
-      sleepTime = 1000L / (long) (targetFps + 1);
-      this.targetFps = targetFps;
-    }
+  /**
+   * Must be called right before the first frame of the game loop, so the loading time before isn't counted as a frame
+   */
+  protected void start() {
+    frameStartNanos = System.nanoTime();
+    framePacer.reset();
   }
   
   /**
@@ -76,11 +187,72 @@ public class GameTimer {
   protected void updateTimer() {
     double newTimestamp = createTimestamp();
     currentSecond = (int) newTimestamp;
-    fps = (int) Math.round(currentFrame / currentTimestamp);
+    final long now = System.nanoTime();
+    addFrameDuration(now - frameStartNanos);
+    updateTicks(now - frameStartNanos);
+    frameStartNanos = now;
+    fps = (int) Math.round(frameNanosSum == 0 ? 0 : 1e9 * frameCount / frameNanosSum);
     currentFrame++;
     currentTimestamp = newTimestamp;
   }
   
+  /**
+   * Writes the duration of the last frame into the window, replacing the oldest one once the window is full
+   */
+  private void addFrameDuration(long nanos) {
+    if (frameCount == frameNanos.length) {
+      final long oldest = frameNanos[frameIndex];
+      frameNanosSum -= oldest;
+      histogram.remove(oldest);
+      if (oldest >= maxFrameNanos) {
+        maxFrameNanos = -1;
+      }
+    } else {
+      frameCount++;
+    }
+    frameNanos[frameIndex] = nanos;
+    frameIndex = (frameIndex + 1) % frameNanos.length;
+    frameNanosSum += nanos;
+    histogram.add(nanos);
+    if (maxFrameNanos != -1 && nanos > maxFrameNanos) {
+      maxFrameNanos = nanos;
+    }
+  }
+  
+  /**
+   * Adds the duration of the last frame to the time which has to be simulated and takes the ticks of the current frame from it.
+   * If more than the maximum ticks per frame are due, the rest is dropped, so the simulation falls behind the real time
+   * instead of making each frame slower than the one before.
+   */
+  private void updateTicks(long nanos) {
+    if (tickNanos == 0) {
+      pendingTicks = 1;
+      tickCount++;
+      return;
+    }
+    tickAccumulatorNanos += nanos;
+    long ticks = tickAccumulatorNanos / tickNanos;
+    final int maxTicks = Math.max(1, Settings.maxTicksPerFrame);
+    if (ticks > maxTicks) {
+      droppedTickCount += ticks - maxTicks;
+      tickAccumulatorNanos -= (ticks - maxTicks) * tickNanos;
+      ticks = maxTicks;
+    }
+    tickAccumulatorNanos -= ticks * tickNanos;
+    pendingTicks = (int) ticks;
+    tickCount += ticks;
+  }
+  
+  private long getMaxFrameNanos() {
+    if (maxFrameNanos == -1) {
+      maxFrameNanos = 0;
+      for (int i = 0; i < frameCount; i++) {
+        maxFrameNanos = Math.max(maxFrameNanos, frameNanos[i]);
+      }
+    }
+    return maxFrameNanos;
+  }
+  
   /**
    * @return Current timestamp in seconds (from system time)
    */
@@ -0,0 +1,261 @@
+package deadzone;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+
+/**
+ * Records the begin and end time of named zones of the game loop, the renderer, the assets and the scenes.
+ * Each thread writes into its own preallocated ring buffer, so recording a zone doesn't allocate or synchronize.
+ * On request (F12) or, if enabled, when a frame takes longer than the spike threshold, the last frames of all threads are written
+ * as Chrome trace events into the logs directory, which can be opened with chrome://tracing or Perfetto.
+ */
+public class Profiler {
+  
+  /**
+   * The recorded parts of a frame
+   */
+  public enum Zone {
+    FRAME("frame"),
+    TIMER("timer"),
+    POLL_EVENTS("poll events"),
+    INPUT("input"),
+    UPDATE("update"),
+    RENDER("render"),
+    SWAP_BUFFERS("swap buffers"),
+    SLEEP("sleep"),
+    // Scenes
+    TICK("simulation tick"),
+    DEBUG_INFOS("debug infos"),
+    SEND_TO_RENDERER("send to renderer"),
+    // Renderer
+    PREPARE_GRID("prepare grid"),
+    SORT_QUEUE("sort queue"),
+    WAIT_FOR_FRAME("wait for render thread"),
+    RENDER_FRAME("render frame"),
+    OPAQUE_PASS("opaque pass"),
+    TILE_PASS("tile pass"),
+    TRANSLUCENT_PASS("translucent pass"),
+    FILL_BATCH("fill batch"),
+    // Assets
+    LOAD_ASSETS("load assets"),
+    PACK_ATLAS("pack atlas");
+  
+    /** Name of the zone in the trace */
+    public final String label;
+  
+    Zone(String label) {
+      this.label = label;
+    }
+  }
+  
+  /** Amount of zones which are kept per thread */
+  private static final int capacity = 1 << 16;
+  
+  /** Maximum nesting depth of the zones */
+  private static final int maxDepth = 64;
+  
+  /** Minimum time between two dumps which are triggered by spikes in nanoseconds, so a slow phase doesn't write a file per frame */
+  private static final long spikeDumpInterval = 10_000_000_000L;
+  
+  /**
+   * The recorded zones of a single thread
+   */
+  private static class ThreadBuffer {
+    final String threadName;
+    final long threadId;
+    final Zone[] zones = new Zone[capacity];
+    final long[] beginNanos = new long[capacity];
+    /** End time of each zone (-1 while the zone is open) */
+    final long[] endNanos = new long[capacity];
+    /** Indices of the open zones */
+    final int[] openZones = new int[maxDepth];
+    int depth = 0;
+    /** Amount of zones which were recorded since the start, the index of the next zone is count % capacity */
+    volatile long count = 0;
+  
+    ThreadBuffer(Thread thread) {
+      threadName = thread.getName();
+      threadId = thread.getId();
+    }
+  }
+  
+  /** The buffers of all threads which recorded zones so far */
+  private static final CopyOnWriteArrayList<ThreadBuffer> buffers = new CopyOnWriteArrayList<>();
+  
+  private static final ThreadLocal<ThreadBuffer> threadBuffer = ThreadLocal.withInitial(() -> {
+    final ThreadBuffer buffer = new ThreadBuffer(Thread.currentThread());
+    buffers.add(buffer);
+    return buffer;
+  });
+  
+  /** Begin times of the last frames of the game loop, used to find the start of the dumped range */
+  private static final long[] frameBegins = new long[capacity];
+  private static int frameCount = 0;
+  
+  /** True, if the last frames shall be dumped at the end of the current frame */
+  private static volatile boolean dumpRequested = false;
+  
+  /** Time of the last dump which was triggered by a spike (only valid if there was one) */
+  private static long lastSpikeDump;
+  private static boolean spikeDumped = false;
+  
+  
+  /**
+   * Starts a zone on the calling thread, which must be closed by {@link #end()}
+   */
+  public static void begin(Zone zone) {
+    if (!Settings.profiling) {
+      return;
+    }
+    final ThreadBuffer buffer = threadBuffer.get();
+    final int index = (int) (buffer.count % capacity);
+    buffer.zones[index] = zone;
+    buffer.endNanos[index] = -1;
+    if (buffer.depth < maxDepth) {
+      buffer.openZones[buffer.depth] = index;
+    }
+    buffer.depth++;
+    buffer.beginNanos[index] = System.nanoTime();
+    buffer.count++;
+  }
+  
+  
+  /**
+   * Closes the zone which was started last on the calling thread
+   */
+  public static void end() {
+    if (!Settings.profiling) {
+      return;
+    }
+    final long now = System.nanoTime();
+    final ThreadBuffer buffer = threadBuffer.get();
+    if (buffer.depth == 0) {
+      return;
+    }
+    buffer.depth--;
+    if (buffer.depth < maxDepth) {
+      buffer.endNanos[buffer.openZones[buffer.depth]] = now;
+    }
+  }
+  
+  
+  /**
+   * Starts the zone of a new frame of the game loop
+   */
+  public static void beginFrame() {
+    frameBegins[frameCount++ % capacity] = System.nanoTime();
+    begin(Zone.FRAME);
+  }
+  
+  
+  /**
+   * Closes the zone of the current frame of the game loop and writes the trace, if it was requested or the frame was a spike
+   */
+  public static void endFrame() {
+    end();
+    if (!Settings.profiling || frameCount == 0) {
+      return;
+    }
+    final long now = System.nanoTime();
+    final long frameNanos = now - frameBegins[(frameCount - 1) % capacity];
+    final boolean spike = Settings.profilerSpikeMillis > 0 && frameNanos > Settings.profilerSpikeMillis * 1_000_000L;
+    if (dumpRequested || (spike && (!spikeDumped || now - lastSpikeDump > spikeDumpInterval))) {
+      if (!dumpRequested) {
+        lastSpikeDump = now;
+        spikeDumped = true;
+      }
+      dumpRequested = false;
+      dump(Settings.profilerDumpFrames);
+    }
+  }
+  
+  
+  /**
+   * Requests to write the trace of the last frames at the end of the current frame. Can be called from any thread.
+   */
+  public static void requestDump() {
+    dumpRequested = true;
+  }
+  
+  
+  /**
+   * Writes the zones of all threads which ended within the given amount of last frames as Chrome trace events into
+   * the logs directory. The zones are copied on the calling thread, the file is written in the background.
+   * Other threads keep recording while their zones are copied, so zones whose slot may have been reused meanwhile
+   * are dropped, and zones which are still open are left out.
+   */
+  public static void dump(int frames) {
+    if (frameCount == 0) {
+      return;
+    }
+    final long from = frameBegins[Math.max(0, frameCount - Math.min(frames, capacity)) % capacity];
+    final StringBuilder events = new StringBuilder();
+    for (ThreadBuffer buffer : buffers) {
+      appendThreadName(events, buffer);
+      final long count = buffer.count;
+      final long first = Math.max(0, count - capacity);
+      final int copied = (int) (count - first);
+      final Zone[] zones = new Zone[copied];
+      final long[] beginNanos = new long[copied];
+      final long[] endNanos = new long[copied];
+      for (int i = 0; i < copied; i++) {
+        final int index = (int) ((first + i) % capacity);
+        zones[i] = buffer.zones[index];
+        beginNanos[i] = buffer.beginNanos[index];
+        endNanos[i] = buffer.endNanos[index];
+      }
+      // Zone n is overwritten while zone n + capacity is recorded, so everything up to count - capacity may be mixed up
+      final long firstValid = buffer.count - capacity + 1;
+      for (int i = 0; i < copied; i++) {
+        if (first + i >= firstValid && endNanos[i] >= beginNanos[i] && beginNanos[i] >= from) {
+          appendZone(events, buffer, zones[i], beginNanos[i], endNanos[i]);
+        }
+      }
+    }
+  
+    final Path file = Paths.get(Util.getRootDir(), "logs", "trace-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json");
+    final Thread writer = new Thread(() -> write(file, events), "Profiler Writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+  
+  
+  private static void appendThreadName(StringBuilder events, ThreadBuffer buffer) {
+    if (events.length() > 0) {
+      events.append(",\n");
+    }
+    events.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":").append(buffer.threadId)
+      .append(",\"args\":{\"name\":\"").append(buffer.threadName.replace("\"", "'")).append("\"}}");
+  }
+  
+  
+  private static void appendZone(StringBuilder events, ThreadBuffer buffer, Zone zone, long begin, long end) {
+    // Complete events with times in microseconds
+    events.append(",\n{\"name\":\"").append(zone.label).append("\",\"ph\":\"X\",\"pid\":1,\"tid\":").append(buffer.threadId)
+      .append(",\"ts\":").append(String.format(Locale.ROOT, "%.3f", begin / 1e3))
+      .append(",\"dur\":").append(String.format(Locale.ROOT, "%.3f", (end - begin) / 1e3)).append('}');
+  }
+  
+  
+  private static void write(Path file, CharSequence events) {
+    try {
+      Files.createDirectories(file.getParent());
+      try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+        writer.append("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n").append(events).append("\n]}\n");
+      }
+      System.out.println("Profiler trace written to " + file);
+    } catch (IOException e) {
+      System.err.println("Could not write the profiler trace \"" + file + "\".\n" + e.getMessage());
+    }
+  }
+  
+}
@@ -21,4 +21,50 @@ public class Settings {
   
   public static int targetFPS = -1;  // If v-sync is enabled, the FPS is limited to the frame rate of the monitor (-1 = unlimited)
   
+  public static boolean batchRendering = true;  // Merge objects with the same texture into a single draw call instead of drawing each object on its own
+  
+  public static boolean instancedTiles = true;  // Draw all tiles of an iso grid with instanced rendering (ignored if not supported by the graphics card)
+  
+  public static boolean textureArrays = true;  // Store textures of the same size as layers of array textures, so tiles can switch their texture by layer index
+  
+  public static boolean textureAtlas = true;  // Pack the textures of the asset manager into atlas pages, so objects with different textures can be batched
+  
+  public static int atlasPageSize = 2048;  // Width and height of each texture atlas page in pixels
+  
+  public static boolean staticLayers = true;  // Cache the instanced tiles of each iso grid in an offscreen framebuffer, which is only redrawn if the grid or the camera changes
+  
+  public static float staticLayerMargin = 0.25f;  // Part of the window size which is cached around each side of the viewport, so the camera can move without redrawing the cache
+  
+  public static boolean viewportCulling = true;  // Only render tiles and iso objects which are within the viewport
+  
+  public static int cullingMargin = 1;  // Amount of tiles around the viewport which are rendered anyway, for objects which exceed their tile
+  
+  public static int streamRegionSize = 4 * 1024 * 1024;  // Size of the per-frame region of the streaming vertex buffer in bytes
+  
+  public static int streamRegionCount = 3;  // Amount of frames the CPU can write ahead of the GPU before it has to wait for a fence
+  
+  public static boolean packedVertices = true;  // Store vertex colors as bytes and texture coordinates as shorts in the GPU buffers (16 instead of 32 bytes per vertex)
+  
+  public static int parallelVertexThreshold = 16384;  // Minimum amount of vertices per partition, if the vertices of a frame are copied into the vertex stream in parallel
+  
+  public static int tickRate = 60;  // Simulation updates per second, independent of the frame rate (-1 = one update per rendered frame)
+  
+  public static int maxTicksPerFrame = 5;  // Maximum simulation updates per rendered frame, further ones are dropped, so a slow frame can't cause ever slower frames
+  
+  public static int frameStatsWindow = 1000;  // Amount of last frames the frame time statistics (average, percentiles, 1% low) are calculated from
+  
+  public static boolean profiling = true;  // Record the duration of the parts of each frame, so the last frames can be written as trace (F12 or on a spike)
+  
+  public static int profilerSpikeMillis = -1;  // Frames which take longer than this write the trace of the last frames automatically (-1 = never, only on F12)
+  
+  public static int profilerDumpFrames = 120;  // Amount of last frames which are written into a trace
+  
+  public static boolean gpuTimers = true;  // Measure the GPU time of each render pass with timer queries (ignored if not supported by the graphics card)
+  
+  public static boolean shaderCache = true;  // Store the linked shader programs in the cache directory, so they don't need to be compiled on the next start (ignored if not supported by the driver)
+  
+  public static boolean renderThread = false;  // Draw the frames on a dedicated thread, while the game thread already updates the next frame
+  
+  public static int renderLatency = 1;  // Amount of finished frames which may wait for the render thread (0 = double buffering, 1 = triple buffering)
+  
 }
@@ -35,6 +35,9 @@ public class Util {
   /** Stores the absolute path of the fonts folder */
   private static final String absFontsDir;
   
+  /** Stores the absolute path of the folder for generated files, which can be deleted at any time */
+  private static final String absCacheDir;
+  
   
   static {
     // Initialize fixed paths
@@ -47,6 +50,8 @@ public class Util {
     
     absAssetsDir = absRootDir + "assets" + separator;
     absFontsDir = absAssetsDir + "fonts" + separator;
+    
+    absCacheDir = absRootDir + "cache" + separator;
   }
   
   
@@ -92,6 +97,13 @@ public class Util {
     return absFontsDir;
   }
   
+  /**
+   * @return Absolute path of the cache directory
+   */
+  public static String getCacheDir()  {
+    return absCacheDir;
+  }
+  
   
   public static String readFullFile(String path) {
     byte[] encoded;
@@ -1,9 +1,9 @@
 package deadzone;
 
+import org.lwjgl.glfw.GLFWKeyCallback;
 import org.lwjgl.glfw.GLFWWindowSizeCallback;
 
 import static org.lwjgl.glfw.GLFW.*;
-import static org.lwjgl.opengl.GL11.glViewport;
 
 
 /**
@@ -44,6 +44,16 @@ public class Window {
       Deadzone.getApplication().getWindow().onResize(width, height);
       }
     });
+    
+    // Register the callback function which writes the profiler trace of the last frames on F12
+    glfwSetKeyCallback(handle, new GLFWKeyCallback() {
+      @Override
+      public void invoke(long window, int key, int scancode, int action, int mods) {
+        if (key == GLFW_KEY_F12 && action == GLFW_PRESS) {
+          Profiler.requestDump();
+        }
+      }
+    });
   }
   
   public long getHandle() {
@@ -68,12 +78,12 @@ public class Window {
   
   /**
    * Callback handler
-   * Called when the user resizes or maximizes the current window
+   * Called when the user resizes or maximizes the current window.
+   * The viewport is adjusted by the renderer with the next frame, since the OpenGL context may be owned by the render thread.
    */
   private void onResize(int newWidth, int newHeight) {
     this.width = newWidth;
     this.height = newHeight;
-    glViewport(0, 0, newWidth, newHeight);
   }
 
   
@@ -1,9 +1,14 @@
 package deadzone.assets;
 
+import deadzone.Profiler;
+import deadzone.Settings;
 import deadzone.Util;
 import deadzone.graphics.fonts.FontFamily;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 
 
 /**
@@ -16,6 +21,12 @@ public class AssetManager {
   HashMap<String, Texture> textures = new HashMap<>();
   HashMap<String, FontFamily> fonts = new HashMap<>();
   
+  /** Array textures of all textures which share their size with at least one other texture */
+  private final ArrayList<TextureArray> textureArrays = new ArrayList<>();
+  
+  /** Atlas into which the textures are packed, so most objects of a scene share the same GPU texture */
+  private final TextureAtlas atlas = new TextureAtlas(Settings.atlasPageSize);
+  
   /**
    * For now, we hardcode all available assets here.
    * TODO: For later maybe use script files which define all concrete assets to load or something like this
@@ -26,6 +37,18 @@ public class AssetManager {
     textures.put("1_marked", new Texture("1_marked.png"));
     textures.put("2", new Texture("2.jpg"));
     
+    // Store textures of the same size (like the variants of a tile) as layers of array textures
+    if (Settings.textureArrays) {
+      createTextureArrays();
+    }
+    
+    // Pack the textures into atlas pages, objects using them are drawn with the page automatically
+    if (Settings.textureAtlas) {
+      Profiler.begin(Profiler.Zone.PACK_ATLAS);
+      atlas.pack("atlas", textures.values());
+      Profiler.end();
+    }
+    
     // Initialize font family "Arial"
     final String fontsDir = Util.getFontsDir();
     fonts.put(
@@ -51,6 +74,31 @@ public class AssetManager {
     return result;
   }
   
+  /**
+   * Groups all textures by their size and creates an array texture for each group with at least two textures
+   */
+  private void createTextureArrays() {
+    final LinkedHashMap<Long, ArrayList<Texture>> groups = new LinkedHashMap<>();
+    for (Texture texture : textures.values()) {
+      final long size = ((long) texture.width << 32) | texture.height;
+      groups.computeIfAbsent(size, key -> new ArrayList<>()).add(texture);
+    }
+    for (ArrayList<Texture> group : groups.values()) {
+      for (int first = 0; group.size() - first > 1; first += TextureArray.maxLayers) {
+        textureArrays.add(new TextureArray(group.subList(first, Math.min(group.size(), first + TextureArray.maxLayers))));
+      }
+    }
+  }
+  
+  
+  public List<TextureArray> getTextureArrays() {
+    return textureArrays;
+  }
+  
+  public TextureAtlas getAtlas() {
+    return atlas;
+  }
+  
   public FontFamily getFont(String identifier) {
     final FontFamily result = fonts.get(identifier.toLowerCase());
     if (result == null) {
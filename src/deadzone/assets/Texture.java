@@ -1,13 +1,23 @@
 package deadzone.assets;
 
+import deadzone.graphics.GLStateCache;
+import deadzone.graphics.ShaderRegistry;
 import org.lwjgl.system.MemoryStack;
 
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 
+import static org.lwjgl.opengl.GL12.*;
 import static org.lwjgl.stb.STBImage.*;
 
 
+/**
+ * An image which is loaded from the hard drive.
+ * The texture also owns its copy in the GPU memory: it is uploaded when the first object references it
+ * and freed again when the last reference was released, so every texture exists only once in the GPU memory.
+ * If the texture was packed into an atlas page, the page is uploaded instead and the texture coordinates
+ * of the objects are mapped into the region of the page.
+ */
 public class Texture implements IAsset {
   
   final AssetTypes assetType = AssetTypes.TEXTURE;
@@ -22,6 +32,42 @@ public class Texture implements IAsset {
   /** Unique object identifier */
   String identifier;
   
+  /** Amount of created textures, used to give each texture a sequential number */
+  private static int textureCount = 0;
+  
+  /** Sequential number of this texture, used to group objects with the same texture when sorting the render queue */
+  private final int sortId = textureCount++;
+  
+  /** True, if at least one pixel of the texture is not fully opaque */
+  private boolean transparent;
+  
+  /** True, if at least one pixel is neither fully opaque nor fully transparent, so the texture must be blended */
+  private boolean translucent;
+  
+  /** True, if every pixel is opaque white, so drawing the texture is the same as drawing the vertex color only */
+  private boolean plainWhite;
+  
+  /** True, if the texture only defines the coverage with its alpha channel and the color comes from the vertices (like glyph atlases) */
+  private boolean alphaMask;
+  
+  /** The handle of the texture in the GPU memory (0 as long as it's not uploaded) */
+  private int handle = 0;
+  
+  /** Amount of objects which currently reference the GPU texture */
+  private int referenceCount = 0;
+  
+  /** The atlas region this texture was packed into (null if it's uploaded on its own) */
+  private TextureRegion atlasRegion;
+  
+  /** The array texture this texture is a layer of (null if it's not part of an array) */
+  private TextureArray textureArray;
+  
+  /** Index of the layer within the array texture */
+  private int arrayLayer;
+  
+  /** Amount of uploads of all textures since the start, used to check that textures are not uploaded repeatedly */
+  private static int uploadCount = 0;
+  
   /**
    * Creates a new texture object
    * @param path Relative to the assets/textures directory
@@ -43,6 +89,20 @@ public class Texture implements IAsset {
   }
   
   
+  /**
+   * Creates a new texture from pixel data which was generated at runtime (like an atlas page)
+   * @param name Name of the texture, used instead of the file path in messages
+   * @param data RGBA pixel data, row by row from the top
+   */
+  Texture(String name, ByteBuffer data, int width, int height) {
+    filepath = name;
+    this.data = data;
+    this.width = width;
+    this.height = height;
+    detectTransparency();
+  }
+  
+  
   /**
    * Returns the absolute path to the texture file
    */
@@ -70,6 +130,7 @@ public class Texture implements IAsset {
       width = w.get();
       height = h.get();
     }
+    detectTransparency();
   }
   
   
@@ -83,4 +144,214 @@ public class Texture implements IAsset {
     return data;
   }
   
+  
+  /**
+   * Adds a reference to the GPU texture and uploads it, if it's the first one.
+   * Every call must be followed by exactly one call of {@link #release()}, when the texture is not drawn anymore.
+   * @return The handle of the texture in the GPU memory
+   */
+  public int acquire() {
+    if (atlasRegion != null) {
+      return atlasRegion.getPage().acquire();
+    }
+    if (referenceCount++ == 0) {
+      upload();
+    }
+    return handle;
+  }
+  
+  
+  /**
+   * Removes a reference to the GPU texture and frees it from the GPU memory, if it was the last one
+   */
+  public void release() {
+    if (atlasRegion != null) {
+      atlasRegion.getPage().release();
+      return;
+    }
+    if (referenceCount == 0) {
+      System.err.println("Texture \"" + filepath + "\" was released more often than acquired");
+      return;
+    }
+    if (--referenceCount == 0) {
+      GLStateCache.deleteTexture(handle);
+      handle = 0;
+    }
+  }
+  
+  
+  /**
+   * Returns the handle of the texture in the GPU memory (0 if it's not referenced by any object)
+   */
+  public int getHandle() {
+    return getBoundTexture().handle;
+  }
+  
+  
+  /**
+   * Returns the texture which is actually bound when this texture is drawn: the atlas page, if it was packed, otherwise itself.
+   * Objects with the same bound texture can be drawn together.
+   */
+  public Texture getBoundTexture() {
+    return atlasRegion != null ? atlasRegion.getPage() : this;
+  }
+  
+  
+  /**
+   * Returns the atlas region this texture was packed into (null if it's uploaded on its own)
+   */
+  public TextureRegion getAtlasRegion() {
+    return atlasRegion;
+  }
+  
+  
+  void setAtlasRegion(TextureRegion atlasRegion) {
+    this.atlasRegion = atlasRegion;
+  }
+  
+  
+  /**
+   * Returns the array texture this texture is a layer of (null if it's not part of an array)
+   */
+  public TextureArray getTextureArray() {
+    return textureArray;
+  }
+  
+  
+  /**
+   * Returns the index of the layer within the array texture
+   */
+  public int getArrayLayer() {
+    return arrayLayer;
+  }
+  
+  
+  void setArrayLayer(TextureArray textureArray, int arrayLayer) {
+    this.textureArray = textureArray;
+    this.arrayLayer = arrayLayer;
+  }
+  
+  
+  /**
+   * Maps a horizontal texture coordinate (0 to 1) to the texture coordinate within the bound texture
+   */
+  public float mapU(float u) {
+    return atlasRegion != null ? atlasRegion.mapU(u) : u;
+  }
+  
+  
+  /**
+   * Maps a vertical texture coordinate (0 to 1) to the texture coordinate within the bound texture
+   */
+  public float mapV(float v) {
+    return atlasRegion != null ? atlasRegion.mapV(v) : v;
+  }
+  
+  
+  /**
+   * Returns how many textures were uploaded into the GPU memory since the start
+   */
+  public static int getUploadCount() {
+    return uploadCount;
+  }
+  
+  
+  /**
+   * Returns the sequential number of the bound texture, so objects on the same atlas page are grouped together
+   */
+  public int getSortId() {
+    return getBoundTexture().sortId;
+  }
+  
+  
+  /**
+   * Returns true, if at least one pixel of the texture is not fully opaque
+   */
+  public boolean hasTransparency() {
+    return transparent;
+  }
+  
+  
+  /**
+   * Returns true, if at least one pixel is partially transparent. Textures with only fully opaque and fully transparent
+   * pixels are cut-outs, which can be drawn without blending by discarding the transparent pixels.
+   */
+  public boolean hasTranslucency() {
+    return translucent;
+  }
+  
+  
+  /**
+   * Returns true, if every pixel is opaque white, so the texture doesn't need to be sampled
+   */
+  public boolean isPlainWhite() {
+    return plainWhite;
+  }
+  
+  
+  /**
+   * Returns true, if only the alpha channel of the texture is used as coverage of the vertex color
+   */
+  public boolean isAlphaMask() {
+    return alphaMask;
+  }
+  
+  
+  /**
+   * Marks the texture as coverage mask, so objects with it are drawn with the vertex color and the alpha channel of the texture
+   */
+  public void setAlphaMask(boolean alphaMask) {
+    this.alphaMask = alphaMask;
+  }
+  
+  
+  /**
+   * Uploads the texture into the GPU memory and leaves it bound to texture unit 0
+   */
+  private void upload() {
+    handle = glGenTextures();
+    GLStateCache.bindTexture(ShaderRegistry.textureUnit, handle);
+    
+    // Specify texture wrapping mode
+    glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+    glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+    
+    // Specify texture filtering mode
+    glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+    glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+    
+    // Send the texture to the shader pipeline
+    glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, getData());
+    
+    // Generate mipmaps for different levels of detail (optional, costs A LOT performance!)
+//    glGenerateMipmap(GL_TEXTURE_2D);
+//    glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
+//    glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+    uploadCount++;
+  }
+  
+  
+  /**
+   * Checks the value of each pixel for (partial) transparency and if the texture is plain white
+   */
+  private void detectTransparency() {
+    final int pixelCount = width * height;
+    transparent = false;
+    translucent = false;
+    plainWhite = true;
+    for (int i = 0; i < pixelCount; i++) {
+      if (data.getInt(i * 4) != 0xFFFFFFFF) {
+        plainWhite = false;
+        final int alpha = data.get(i * 4 + 3) & 0xFF;
+        if (alpha != 0xFF) {
+          transparent = true;
+          if (alpha != 0) {
+            translucent = true;
+            return;
+          }
+        }
+      }
+    }
+  }
+  
 }
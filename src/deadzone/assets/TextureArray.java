@@ -0,0 +1,117 @@
+package deadzone.assets;
+
+import deadzone.graphics.GLStateCache;
+import deadzone.graphics.ShaderRegistry;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL30.*;
+
+
+/**
+ * A group of textures with the same size, which are stored as layers of a single array texture (GL_TEXTURE_2D_ARRAY).
+ * Objects using different textures of the array can be drawn with a single texture bind by selecting the layer
+ * in the shader, and unlike an atlas, the layers can't bleed into each other.
+ * Like a texture, the array is uploaded when the first object references it and freed with the last reference.
+ */
+public class TextureArray {
+  
+  /** Maximum amount of layers per array (the minimum which is guaranteed by OpenGL 3) */
+  public static final int maxLayers = 256;
+  
+  /** Width and height of all layers in pixels */
+  public final int width;
+  public final int height;
+  
+  /** The textures in the order of their layers */
+  private final ArrayList<Texture> layers = new ArrayList<>();
+  
+  /** The handle of the array texture in the GPU memory (0 as long as it's not uploaded) */
+  private int handle = 0;
+  
+  /** Amount of objects which currently reference the GPU texture */
+  private int referenceCount = 0;
+  
+  
+  /**
+   * Creates a new array from textures which all have the same size
+   */
+  TextureArray(List<Texture> textures) {
+    width = textures.get(0).width;
+    height = textures.get(0).height;
+    for (Texture texture : textures) {
+      if (texture.width != width || texture.height != height) {
+        throw new IllegalArgumentException("All layers of a texture array must have the same size");
+      }
+      texture.setArrayLayer(this, layers.size());
+      layers.add(texture);
+    }
+  }
+  
+  
+  /**
+   * Returns the amount of layers
+   */
+  public int getLayerCount() {
+    return layers.size();
+  }
+  
+  
+  /**
+   * Adds a reference to the GPU texture and uploads it, if it's the first one.
+   * Every call must be followed by exactly one call of {@link #release()}.
+   * @return The handle of the array texture in the GPU memory
+   */
+  public int acquire() {
+    if (referenceCount++ == 0) {
+      upload();
+    }
+    return handle;
+  }
+  
+  
+  /**
+   * Removes a reference to the GPU texture and frees it from the GPU memory, if it was the last one
+   */
+  public void release() {
+    if (referenceCount == 0) {
+      System.err.println("Texture array was released more often than acquired");
+      return;
+    }
+    if (--referenceCount == 0) {
+      GLStateCache.deleteTexture(handle);
+      handle = 0;
+    }
+  }
+  
+  
+  /**
+   * Returns the handle of the array texture in the GPU memory (0 if it's not referenced by any object)
+   */
+  public int getHandle() {
+    return handle;
+  }
+  
+  
+  /**
+   * Uploads all layers into the GPU memory and leaves the array bound to texture unit 1
+   */
+  private void upload() {
+    handle = glGenTextures();
+    GLStateCache.bindTextureArray(ShaderRegistry.textureArrayUnit, handle);
+    
+    glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+    glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+    glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+    glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+    
+    // Allocate the storage of all layers first, then fill it layer by layer
+    glTexImage3D(GL_TEXTURE_2D_ARRAY, 0, GL_RGBA8, width, height, layers.size(), 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+    for (int layer = 0; layer < layers.size(); layer++) {
+      glTexSubImage3D(GL_TEXTURE_2D_ARRAY, 0, 0, 0, layer, width, height, 1, GL_RGBA, GL_UNSIGNED_BYTE, layers.get(layer).getData());
+    }
+  }
+  
+}
@@ -0,0 +1,228 @@
+package deadzone.assets;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+
+/**
+ * Packs many small textures into few large atlas pages, so objects with different textures can share
+ * the same GPU texture and therefore be merged into the same batch.
+ * The textures are placed with a skyline packer (bottom-left heuristic), which fills the page from
+ * the top and keeps track of the lowest free position of every column range.
+ * Each packed texture gets a {@link TextureRegion}, which is used automatically whenever the texture is drawn.
+ */
+public class TextureAtlas {
+  
+  /** Each texture is surrounded by a border of this amount of pixels, filled with its edge pixels, to avoid bleeding */
+  private static final int padding = 1;
+  
+  /** Size of each atlas page in pixels */
+  private final int pageSize;
+  
+  /** All created atlas pages */
+  private final ArrayList<Texture> pages = new ArrayList<>();
+  
+  
+  /**
+   * A horizontal segment of the skyline: all pixels from x to x + width are occupied down to y
+   */
+  private static class SkylineNode {
+    int x;
+    int y;
+    int width;
+    
+    SkylineNode(int x, int y, int width) {
+      this.x = x;
+      this.y = y;
+      this.width = width;
+    }
+  }
+  
+  
+  /**
+   * A page which is currently filled
+   */
+  private static class PageBuilder {
+    final ByteBuffer pixels;
+    final ArrayList<SkylineNode> skyline = new ArrayList<>();
+    final ArrayList<Texture> textures = new ArrayList<>();
+    final ArrayList<int[]> positions = new ArrayList<>();
+    
+    PageBuilder(int pageSize) {
+      pixels = MemoryUtil.memCalloc(pageSize * pageSize * 4);
+      skyline.add(new SkylineNode(0, 0, pageSize));
+    }
+  }
+  
+  
+  public TextureAtlas(int pageSize) {
+    this.pageSize = pageSize;
+  }
+  
+  
+  /**
+   * Packs the given textures into atlas pages. Textures which are larger than a page stay on their own.
+   * @param name Prefix for the names of the pages
+   * @return The created atlas pages
+   */
+  public List<Texture> pack(String name, Collection<Texture> textures) {
+    // Placing the highest textures first leads to a flatter skyline and therefore less wasted space
+    final ArrayList<Texture> sorted = new ArrayList<>(textures);
+    sorted.sort((a, b) -> b.height != a.height ? b.height - a.height : b.width - a.width);
+    
+    final ArrayList<PageBuilder> builders = new ArrayList<>();
+    for (Texture texture : sorted) {
+      final int width = texture.width + 2 * padding;
+      final int height = texture.height + 2 * padding;
+      if (width > pageSize || height > pageSize || texture.getAtlasRegion() != null) {
+        continue;
+      }
+      
+      // Use the first page which has enough space left, otherwise start a new page
+      boolean placed = false;
+      for (PageBuilder builder : builders) {
+        if (place(builder, texture, width, height)) {
+          placed = true;
+          break;
+        }
+      }
+      if (!placed) {
+        final PageBuilder builder = new PageBuilder(pageSize);
+        builders.add(builder);
+        place(builder, texture, width, height);
+      }
+    }
+    
+    // Create the page textures and assign the regions to the packed textures
+    final ArrayList<Texture> result = new ArrayList<>();
+    for (PageBuilder builder : builders) {
+      final Texture page = new Texture(name + "_" + pages.size(), builder.pixels, pageSize, pageSize);
+      for (int i = 0; i < builder.textures.size(); i++) {
+        final Texture texture = builder.textures.get(i);
+        final int[] position = builder.positions.get(i);
+        texture.setAtlasRegion(new TextureRegion(page, position[0], position[1], texture.width, texture.height));
+      }
+      pages.add(page);
+      result.add(page);
+    }
+    return result;
+  }
+  
+  
+  /**
+   * Returns all pages which were created by this atlas
+   */
+  public List<Texture> getPages() {
+    return pages;
+  }
+  
+  
+  /**
+   * Tries to place the texture (including its padding) on the given page
+   * @return False, if the page has not enough space left
+   */
+  private boolean place(PageBuilder builder, Texture texture, int width, int height) {
+    final ArrayList<SkylineNode> skyline = builder.skyline;
+    
+    // Find the position at which the bottom edge of the texture is as high as possible
+    int bestIndex = -1;
+    int bestX = 0;
+    int bestY = 0;
+    int bestBottom = Integer.MAX_VALUE;
+    for (int i = 0; i < skyline.size(); i++) {
+      final int y = fitY(skyline, i, width);
+      if (y >= 0 && y + height <= pageSize && y + height < bestBottom) {
+        bestIndex = i;
+        bestX = skyline.get(i).x;
+        bestY = y;
+        bestBottom = y + height;
+      }
+    }
+    if (bestIndex == -1) {
+      return false;
+    }
+    
+    // Raise the skyline below the texture and remove the nodes which are covered completely
+    skyline.add(bestIndex, new SkylineNode(bestX, bestBottom, width));
+    final int right = bestX + width;
+    for (int i = bestIndex + 1; i < skyline.size(); ) {
+      final SkylineNode node = skyline.get(i);
+      if (node.x >= right) {
+        break;
+      }
+      final int overlap = right - node.x;
+      if (overlap >= node.width) {
+        skyline.remove(i);
+        continue;
+      }
+      node.x += overlap;
+      node.width -= overlap;
+      break;
+    }
+    mergeSkyline(skyline);
+    
+    copyPixels(texture, builder.pixels, bestX + padding, bestY + padding);
+    builder.textures.add(texture);
+    builder.positions.add(new int[] { bestX + padding, bestY + padding });
+    return true;
+  }
+  
+  
+  /**
+   * Returns the lowest y position at which a texture with the given width can be placed, if its left edge
+   * is at the start of the given skyline node (-1 if it would exceed the right edge of the page)
+   */
+  private int fitY(ArrayList<SkylineNode> skyline, int index, int width) {
+    final int x = skyline.get(index).x;
+    if (x + width > pageSize) {
+      return -1;
+    }
+    int y = 0;
+    int remaining = width;
+    for (int i = index; remaining > 0; i++) {
+      final SkylineNode node = skyline.get(i);
+      y = Math.max(y, node.y);
+      remaining -= node.width;
+    }
+    return y;
+  }
+  
+  
+  /**
+   * Merges neighboring skyline nodes of the same height
+   */
+  private static void mergeSkyline(ArrayList<SkylineNode> skyline) {
+    for (int i = 0; i < skyline.size() - 1; ) {
+      final SkylineNode node = skyline.get(i);
+      final SkylineNode next = skyline.get(i + 1);
+      if (node.y == next.y) {
+        node.width += next.width;
+        skyline.remove(i + 1);
+      } else {
+        i++;
+      }
+    }
+  }
+  
+  
+  /**
+   * Copies the pixels of the texture into the page and repeats its edge pixels in the padding around it
+   */
+  private void copyPixels(Texture texture, ByteBuffer page, int left, int top) {
+    final ByteBuffer source = texture.getData();
+    for (int y = -padding; y < texture.height + padding; y++) {
+      final int sourceY = Math.min(Math.max(y, 0), texture.height - 1);
+      for (int x = -padding; x < texture.width + padding; x++) {
+        final int sourceX = Math.min(Math.max(x, 0), texture.width - 1);
+        final int sourceIndex = (sourceY * texture.width + sourceX) * 4;
+        final int targetIndex = ((top + y) * pageSize + left + x) * 4;
+        page.putInt(targetIndex, source.getInt(sourceIndex));
+      }
+    }
+  }
+  
+}
@@ -0,0 +1,57 @@
+package deadzone.assets;
+
+
+/**
+ * A rectangular part of an atlas page, in which the pixels of a single texture are stored.
+ * The region maps the texture coordinates of the texture (0 to 1) to the texture coordinates of the page.
+ */
+public class TextureRegion {
+  
+  /** The atlas page which contains the pixels */
+  private final Texture page;
+  
+  /** Texture coordinates of the region within the page */
+  private final float u0;
+  private final float v0;
+  private final float u1;
+  private final float v1;
+  
+  
+  /**
+   * Creates a new region
+   * @param page The atlas page which contains the region
+   * @param x Left edge of the region in pixels
+   * @param y Top edge of the region in pixels
+   * @param width Width of the region in pixels
+   * @param height Height of the region in pixels
+   */
+  TextureRegion(Texture page, int x, int y, int width, int height) {
+    this.page = page;
+    u0 = (float) x / page.width;
+    v0 = (float) y / page.height;
+    u1 = (float) (x + width) / page.width;
+    v1 = (float) (y + height) / page.height;
+  }
+  
+  
+  public Texture getPage() {
+    return page;
+  }
+  
+  
+  /**
+   * Maps a horizontal texture coordinate of the packed texture to the texture coordinate within the page
+   */
+  public float mapU(float u) {
+    return u0 + u * (u1 - u0);
+  }
+  
+  
+  /**
+   * Maps a vertical texture coordinate of the packed texture to the texture coordinate within the page
+   */
+  public float mapV(float v) {
+    return v0 + v * (v1 - v0);
+  }
+  
+}
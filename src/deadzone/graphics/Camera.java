@@ -0,0 +1,259 @@
+package deadzone.graphics;
+
+import deadzone.Deadzone;
+import deadzone.Window;
+import deadzone.math.Matrix4x4;
+import deadzone.math.Vector4;
+import org.lwjgl.system.MemoryStack;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+
+import static org.lwjgl.opengl.GL31.*;
+
+
+/**
+ * The camera computes the view and projection matrices and publishes them through a uniform buffer object,
+ * which is shared by all shader programs (uniform block "Camera").
+ * The buffer holds two blocks: one for the isometric projection of world objects and one for the UI.
+ * The matrices are only recomputed if the window size or the camera itself was changed and only uploaded
+ * if they differ from the uploaded ones, so drawing an object only needs to select the block it's rendered with.
+ * Computing the matrices doesn't use OpenGL, so it's done by the game thread, while the upload is done by the
+ * thread which draws the frame.
+ */
+public class Camera {
+  
+  /** The binding point of the uniform block "Camera" in all shader programs */
+  public static final int bindingPoint = 0;
+  
+  /** Size of a single block in bytes (one 4x4 float matrix) */
+  private static final int blockSize = 16 * Float.BYTES;
+  
+  /** The handler to access the uniform buffer object in the GPU */
+  private final int uboId;
+  
+  /** Offset of the UI block within the buffer (the iso block starts at 0) */
+  private final int uiBlockOffset;
+  
+  /** View (camera) matrix for isometric rendering */
+  private Matrix4x4 isoView;
+  
+  /** The combined projection and view matrix for isometric rendering as it was computed the last time */
+  private Matrix4x4 isoViewProjection;
+  
+  /** The combined projection and view matrix for isometric rendering as it was uploaded the last time */
+  private Matrix4x4 uploadedIsoViewProjection;
+  
+  /** Bounding box of the area of the world (plane z = 0) which is visible with the isometric projection: min x, min y, max x, max y */
+  private final float[] visibleWorldBounds = new float[4];
+  
+  /** Half size of the square which is clipped to find the visible area, limits the area if the projection doesn't */
+  private static final double worldLimit = 1000000;
+  
+  /** Window size the matrices were computed for */
+  private int windowWidth = -1;
+  private int windowHeight = -1;
+  
+  /** If true, the camera was changed and the matrices must be recomputed */
+  private boolean changed = true;
+  
+  
+  public Camera() {
+    // TODO: Adjust the move matrix values to create a proper isometric projection
+    isoView = new Matrix4x4(
+      new Vector4(5, -2, 8, 0),         // move camera to (5|-2|8)
+      new Vector4(0, 1, 0, 0),                 // look at the origin
+      new Vector4(0, 1, 0, 0),                 // head is up (upside-down would be 0, -1, 0) Im Grunde rotiert man damit die Kamera seitlich
+      new Vector4(0, 0, 0, 1)                  // neutral element
+    );
+    
+    // Bound buffer ranges must start at a multiple of the offset alignment of the graphics card
+    final int alignment = glGetInteger(GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT);
+    uiBlockOffset = ((blockSize + alignment - 1) / alignment) * alignment;
+    
+    uboId = glGenBuffers();
+    glBindBuffer(GL_UNIFORM_BUFFER, uboId);
+    glBufferData(GL_UNIFORM_BUFFER, uiBlockOffset + blockSize, GL_DYNAMIC_DRAW);
+    
+    // The UI is drawn without any view or projection, so its block never changes
+    upload(uiBlockOffset, new Matrix4x4());
+  }
+  
+  
+  /**
+   * Recomputes the matrices, if the window size or the camera was changed since the last frame.
+   * Must be called once per frame before the frame is handed over to the renderer.
+   */
+  public void update() {
+    final Window window = Deadzone.getApplication().getWindow();
+    if (!changed && window.getPixelWidth() == windowWidth && window.getPixelHeight() == windowHeight) {
+      return;
+    }
+    windowWidth = window.getPixelWidth();
+    windowHeight = window.getPixelHeight();
+    
+    // Projection (Mesh) for isometric rendering
+    final float ratio = (float) windowWidth / (float) windowHeight;
+    final Matrix4x4 projection = Matrix4x4.createOrthoProjectionMatrix(-ratio, ratio, -1f, 1f, -1f, 1f);
+    
+    // The view matrix is defined by its rows, so it's transposed to get the OpenGL (column-wise) layout
+    isoViewProjection = projection.multiply(isoView.transpose());
+    computeVisibleWorldBounds();
+    changed = false;
+  }
+  
+  
+  /**
+   * Uploads the isometric matrix of a frame, if it differs from the one which was uploaded the last time.
+   * Must be called by the thread which owns the OpenGL context before the frame is drawn.
+   */
+  void upload(Matrix4x4 isoViewProjection) {
+    if (isoViewProjection == uploadedIsoViewProjection) {
+      return;
+    }
+    upload(0, isoViewProjection);
+    uploadedIsoViewProjection = isoViewProjection;
+  }
+  
+  
+  /**
+   * Selects the block which is used by the upcoming draw calls
+   * @param isIso True for the isometric projection, false for the UI
+   */
+  public void bind(boolean isIso) {
+    GLStateCache.bindUniformBufferRange(bindingPoint, uboId, isIso ? 0 : uiBlockOffset, blockSize);
+  }
+  
+  
+  /**
+   * Returns the window width the matrices were computed for
+   */
+  public int getWindowWidth() {
+    return windowWidth;
+  }
+  
+  
+  /**
+   * Returns the window height the matrices were computed for
+   */
+  public int getWindowHeight() {
+    return windowHeight;
+  }
+  
+  
+  public Matrix4x4 getIsoView() {
+    return isoView;
+  }
+  
+  
+  /**
+   * Replaces the view matrix for isometric rendering. The matrices are uploaded again with the next frame.
+   */
+  public void setIsoView(Matrix4x4 isoView) {
+    this.isoView = isoView;
+    changed = true;
+  }
+  
+  
+  /**
+   * Returns the combined projection and view matrix for isometric rendering of the current frame
+   */
+  public Matrix4x4 getIsoViewProjection() {
+    return isoViewProjection;
+  }
+  
+  
+  /**
+   * Returns the bounding box of the area of the world which is visible with the isometric projection
+   * (min x, min y, max x, max y). If nothing is visible, the min values are greater than the max values.
+   */
+  public float[] getVisibleWorldBounds() {
+    update();
+    return visibleWorldBounds;
+  }
+  
+  
+  /**
+   * Free up the uniform buffer from GPU memory
+   */
+  public void dispose() {
+    GLStateCache.deleteBuffer(uboId);
+  }
+  
+  
+  /**
+   * Computes the bounding box of the visible world area.
+   * World objects lie in the plane z = 0, so each clip coordinate is a linear function of the world x and y.
+   * The visible area is the part of the plane within the clip volume (-w &lt;= x, y, z &lt;= w), which is found
+   * by clipping a huge square against the six planes of the clip volume.
+   */
+  private void computeVisibleWorldBounds() {
+    final Vector4 origin = isoViewProjection.multiply(new Vector4(0, 0, 0, 1));
+    final Vector4 unitX = isoViewProjection.multiply(new Vector4(1, 0, 0, 0));
+    final Vector4 unitY = isoViewProjection.multiply(new Vector4(0, 1, 0, 0));
+    
+    ArrayList<double[]> polygon = new ArrayList<>();
+    polygon.add(new double[] { -worldLimit, -worldLimit });
+    polygon.add(new double[] { worldLimit, -worldLimit });
+    polygon.add(new double[] { worldLimit, worldLimit });
+    polygon.add(new double[] { -worldLimit, worldLimit });
+    
+    // Coefficients (factor of x, factor of y, constant) of the clip coordinates x, y, z and w
+    final double[][] rows = {
+      { unitX.x, unitY.x, origin.x },
+      { unitX.y, unitY.y, origin.y },
+      { unitX.z, unitY.z, origin.z }
+    };
+    final double[] w = { unitX.w, unitY.w, origin.w };
+    for (double[] row : rows) {
+      // Keep the part in which w - coordinate >= 0 and w + coordinate >= 0
+      polygon = clipPolygon(polygon, w[0] - row[0], w[1] - row[1], w[2] - row[2]);
+      polygon = clipPolygon(polygon, w[0] + row[0], w[1] + row[1], w[2] + row[2]);
+    }
+    
+    visibleWorldBounds[0] = visibleWorldBounds[1] = Float.MAX_VALUE;
+    visibleWorldBounds[2] = visibleWorldBounds[3] = -Float.MAX_VALUE;
+    for (double[] point : polygon) {
+      visibleWorldBounds[0] = (float) Math.min(visibleWorldBounds[0], point[0]);
+      visibleWorldBounds[1] = (float) Math.min(visibleWorldBounds[1], point[1]);
+      visibleWorldBounds[2] = (float) Math.max(visibleWorldBounds[2], point[0]);
+      visibleWorldBounds[3] = (float) Math.max(visibleWorldBounds[3], point[1]);
+    }
+  }
+  
+  
+  /**
+   * Returns the part of the convex polygon in which a * x + b * y + c >= 0 (Sutherland-Hodgman)
+   */
+  private static ArrayList<double[]> clipPolygon(ArrayList<double[]> polygon, double a, double b, double c) {
+    final ArrayList<double[]> result = new ArrayList<>();
+    for (int i = 0; i < polygon.size(); i++) {
+      final double[] current = polygon.get(i);
+      final double[] next = polygon.get((i + 1) % polygon.size());
+      final double currentDistance = a * current[0] + b * current[1] + c;
+      final double nextDistance = a * next[0] + b * next[1] + c;
+      if (currentDistance >= 0) {
+        result.add(current);
+      }
+      if ((currentDistance >= 0) != (nextDistance >= 0)) {
+        final double t = currentDistance / (currentDistance - nextDistance);
+        result.add(new double[] { current[0] + t * (next[0] - current[0]), current[1] + t * (next[1] - current[1]) });
+      }
+    }
+    return result;
+  }
+  
+  
+  /**
+   * Writes a matrix into the uniform buffer at the given byte offset
+   */
+  private void upload(int offset, Matrix4x4 matrix) {
+    glBindBuffer(GL_UNIFORM_BUFFER, uboId);
+    try (MemoryStack stack = MemoryStack.stackPush()) {
+      final FloatBuffer buffer = stack.mallocFloat(16);
+      matrix.toBuffer(buffer);
+      glBufferSubData(GL_UNIFORM_BUFFER, offset, buffer);
+    }
+  }
+  
+}
@@ -0,0 +1,315 @@
+package deadzone.graphics;
+
+import java.util.HashMap;
+
+import static org.lwjgl.opengl.GL31.*;
+
+
+/**
+ * Central tracker of the OpenGL state which is changed while rendering.
+ * Every bind or state change is done through this class, so calls which would set the state
+ * to the value it already has are skipped instead of being sent to the driver.
+ * Deleting GL objects must also be done through this class, because OpenGL resets the bindings
+ * of deleted objects to 0.
+ */
+public class GLStateCache {
+  
+  /** Amount of texture units which are tracked */
+  private static final int textureUnitCount = 16;
+  
+  /** The currently used shader program */
+  private static int program = 0;
+  
+  /** The currently bound VAO */
+  private static int vertexArray = 0;
+  
+  /** The buffer which is currently bound to GL_ARRAY_BUFFER */
+  private static int arrayBuffer = 0;
+  
+  /** The currently active texture unit (0 = GL_TEXTURE0) */
+  private static int activeTextureUnit = 0;
+  
+  /** The GL_TEXTURE_2D binding per texture unit */
+  private static final int[] textures = new int[textureUnitCount];
+  
+  /** The GL_TEXTURE_2D_ARRAY binding per texture unit */
+  private static final int[] textureArrays = new int[textureUnitCount];
+  
+  /** Buffer and offset which are bound to each uniform buffer binding point */
+  private static final int[] uniformBuffers = new int[16];
+  private static final long[] uniformBufferOffsets = new long[16];
+  
+  /** The enabled state of all capabilities (like GL_BLEND) which were set through this class */
+  private static final HashMap<Integer, Boolean> capabilities = new HashMap<>();
+  
+  /** The currently used blend function (color and alpha) */
+  private static int blendSrcFactor = GL_ONE;
+  private static int blendDstFactor = GL_ZERO;
+  private static int blendSrcAlphaFactor = GL_ONE;
+  private static int blendDstAlphaFactor = GL_ZERO;
+  
+  /** The framebuffer which is currently drawn into (0 = window) */
+  private static int framebuffer = 0;
+  
+  /** If false, the depth buffer is not written */
+  private static boolean depthMask = true;
+  
+  /** The current viewport: x, y, width, height */
+  private static final int[] viewport = new int[4];
+  
+  /** Amount of calls which were sent to OpenGL / skipped since the last frame started */
+  private static int issuedCalls = 0;
+  private static int avoidedCalls = 0;
+  
+  /** Amount of calls which were sent to OpenGL / skipped in the last finished frame (read by the game thread, if the render thread is enabled) */
+  private static volatile int lastFrameIssuedCalls = 0;
+  private static volatile int lastFrameAvoidedCalls = 0;
+  
+  
+  private GLStateCache() {}
+  
+  
+  public static void useProgram(int programId) {
+    if (program == programId) {
+      avoidedCalls++;
+      return;
+    }
+    glUseProgram(programId);
+    program = programId;
+    issuedCalls++;
+  }
+  
+  public static void bindVertexArray(int vaoId) {
+    if (vertexArray == vaoId) {
+      avoidedCalls++;
+      return;
+    }
+    glBindVertexArray(vaoId);
+    vertexArray = vaoId;
+    issuedCalls++;
+  }
+  
+  public static void bindArrayBuffer(int bufferId) {
+    if (arrayBuffer == bufferId) {
+      avoidedCalls++;
+      return;
+    }
+    glBindBuffer(GL_ARRAY_BUFFER, bufferId);
+    arrayBuffer = bufferId;
+    issuedCalls++;
+  }
+  
+  /**
+   * Binds a range of a uniform buffer to the given uniform block binding point
+   */
+  public static void bindUniformBufferRange(int bindingPoint, int bufferId, long offset, long size) {
+    if (uniformBuffers[bindingPoint] == bufferId && uniformBufferOffsets[bindingPoint] == offset) {
+      avoidedCalls++;
+      return;
+    }
+    glBindBufferRange(GL_UNIFORM_BUFFER, bindingPoint, bufferId, offset, size);
+    uniformBuffers[bindingPoint] = bufferId;
+    uniformBufferOffsets[bindingPoint] = offset;
+    issuedCalls++;
+  }
+  
+  /**
+   * Binds a 2D texture to the given texture unit
+   * @param unit Index of the texture unit (0 = GL_TEXTURE0)
+   * @param textureId Handle of the texture
+   */
+  public static void bindTexture(int unit, int textureId) {
+    if (textures[unit] == textureId) {
+      avoidedCalls++;
+      return;
+    }
+    activeTextureUnit(unit);
+    glBindTexture(GL_TEXTURE_2D, textureId);
+    textures[unit] = textureId;
+    issuedCalls++;
+  }
+  
+  /**
+   * Binds an array texture to the given texture unit
+   * @param unit Index of the texture unit (0 = GL_TEXTURE0)
+   * @param textureId Handle of the array texture
+   */
+  public static void bindTextureArray(int unit, int textureId) {
+    if (textureArrays[unit] == textureId) {
+      avoidedCalls++;
+      return;
+    }
+    activeTextureUnit(unit);
+    glBindTexture(GL_TEXTURE_2D_ARRAY, textureId);
+    textureArrays[unit] = textureId;
+    issuedCalls++;
+  }
+  
+  /**
+   * Selects the texture unit which is affected by texture binds
+   * @param unit Index of the texture unit (0 = GL_TEXTURE0)
+   */
+  public static void activeTextureUnit(int unit) {
+    if (activeTextureUnit == unit) {
+      avoidedCalls++;
+      return;
+    }
+    glActiveTexture(GL_TEXTURE0 + unit);
+    activeTextureUnit = unit;
+    issuedCalls++;
+  }
+  
+  /**
+   * Enables or disables a capability like GL_BLEND or GL_DEPTH_TEST
+   */
+  public static void setCapability(int capability, boolean enabled) {
+    final Boolean current = capabilities.get(capability);
+    if (current != null && current == enabled) {
+      avoidedCalls++;
+      return;
+    }
+    if (enabled) {
+      glEnable(capability);
+    } else {
+      glDisable(capability);
+    }
+    capabilities.put(capability, enabled);
+    issuedCalls++;
+  }
+  
+  public static void setBlendFunc(int srcFactor, int dstFactor) {
+    setBlendFuncSeparate(srcFactor, dstFactor, srcFactor, dstFactor);
+  }
+  
+  /**
+   * Sets separate blend functions for the color and the alpha channel
+   */
+  public static void setBlendFuncSeparate(int srcFactor, int dstFactor, int srcAlphaFactor, int dstAlphaFactor) {
+    if (blendSrcFactor == srcFactor && blendDstFactor == dstFactor
+        && blendSrcAlphaFactor == srcAlphaFactor && blendDstAlphaFactor == dstAlphaFactor) {
+      avoidedCalls++;
+      return;
+    }
+    glBlendFuncSeparate(srcFactor, dstFactor, srcAlphaFactor, dstAlphaFactor);
+    blendSrcFactor = srcFactor;
+    blendDstFactor = dstFactor;
+    blendSrcAlphaFactor = srcAlphaFactor;
+    blendDstAlphaFactor = dstAlphaFactor;
+    issuedCalls++;
+  }
+  
+  /**
+   * Selects the framebuffer which is drawn into
+   * @param framebufferId Handle of the framebuffer object (0 = window)
+   */
+  public static void bindFramebuffer(int framebufferId) {
+    if (framebuffer == framebufferId) {
+      avoidedCalls++;
+      return;
+    }
+    glBindFramebuffer(GL_FRAMEBUFFER, framebufferId);
+    framebuffer = framebufferId;
+    issuedCalls++;
+  }
+  
+  /**
+   * Enables or disables writing into the depth buffer (also affects clearing the depth buffer)
+   */
+  public static void setDepthMask(boolean enabled) {
+    if (depthMask == enabled) {
+      avoidedCalls++;
+      return;
+    }
+    glDepthMask(enabled);
+    depthMask = enabled;
+    issuedCalls++;
+  }
+  
+  /**
+   * Sets the area of the window which is drawn into
+   */
+  public static void setViewport(int x, int y, int width, int height) {
+    if (viewport[0] == x && viewport[1] == y && viewport[2] == width && viewport[3] == height) {
+      avoidedCalls++;
+      return;
+    }
+    glViewport(x, y, width, height);
+    viewport[0] = x;
+    viewport[1] = y;
+    viewport[2] = width;
+    viewport[3] = height;
+    issuedCalls++;
+  }
+  
+  
+  public static void deleteProgram(int programId) {
+    if (program == programId) {
+      program = 0;
+    }
+    glDeleteProgram(programId);
+  }
+  
+  public static void deleteVertexArray(int vaoId) {
+    if (vertexArray == vaoId) {
+      vertexArray = 0;
+    }
+    glDeleteVertexArrays(vaoId);
+  }
+  
+  public static void deleteBuffer(int bufferId) {
+    if (arrayBuffer == bufferId) {
+      arrayBuffer = 0;
+    }
+    for (int bindingPoint = 0; bindingPoint < uniformBuffers.length; bindingPoint++) {
+      if (uniformBuffers[bindingPoint] == bufferId) {
+        uniformBuffers[bindingPoint] = 0;
+      }
+    }
+    glDeleteBuffers(bufferId);
+  }
+  
+  public static void deleteFramebuffer(int framebufferId) {
+    if (framebuffer == framebufferId) {
+      framebuffer = 0;
+    }
+    glDeleteFramebuffers(framebufferId);
+  }
+  
+  public static void deleteTexture(int textureId) {
+    for (int unit = 0; unit < textureUnitCount; unit++) {
+      if (textures[unit] == textureId) {
+        textures[unit] = 0;
+      }
+      if (textureArrays[unit] == textureId) {
+        textureArrays[unit] = 0;
+      }
+    }
+    glDeleteTextures(textureId);
+  }
+  
+  
+  /**
+   * Must be called at the end of each frame to store the call counters of the frame and reset them for the next one
+   */
+  public static void endFrame() {
+    lastFrameIssuedCalls = issuedCalls;
+    lastFrameAvoidedCalls = avoidedCalls;
+    issuedCalls = 0;
+    avoidedCalls = 0;
+  }
+  
+  /**
+   * Returns the amount of state changes which were sent to OpenGL in the last frame
+   */
+  public static int getIssuedCalls() {
+    return lastFrameIssuedCalls;
+  }
+  
+  /**
+   * Returns the amount of state changes which were skipped in the last frame, because the state was already set
+   */
+  public static int getAvoidedCalls() {
+    return lastFrameAvoidedCalls;
+  }
+  
+}
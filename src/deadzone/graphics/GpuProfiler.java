@@ -0,0 +1,212 @@
+package deadzone.graphics;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.ARBTimerQuery.*;
+import static org.lwjgl.opengl.GL15.*;
+
+
+/**
+ * Measures the GPU time of each render pass with timer queries (ARB_timer_query).
+ * The queries of a frame are only read back a few frames later, when the GPU has finished them, so measuring never
+ * stalls the CPU. Results which are still not available when their queries are reused are dropped.
+ */
+public class GpuProfiler {
+  
+  /**
+   * The measured parts of a frame, in the order they are drawn
+   */
+  public enum Pass {
+    CLEAR("clear"),
+    OPAQUE("opaque"),
+    TILES("tiles"),
+    TRANSLUCENT("translucent");
+  
+    /** Name of the pass in the debug overlay */
+    public final String label;
+  
+    Pass(String label) {
+      this.label = label;
+    }
+  }
+  
+  /** Amount of frames whose queries can be pending at the same time */
+  private static final int queryFrames = 4;
+  
+  /** The query objects per frame slot and pass */
+  private final int[][] queries = new int[queryFrames][Pass.values().length];
+  
+  /** True per frame slot and pass, if the query was issued and not read back yet */
+  private final boolean[][] pending = new boolean[queryFrames][Pass.values().length];
+  
+  /** Frame slot whose queries are currently issued */
+  private int slot = 0;
+  
+  /** The pass which is currently measured (null if none) */
+  private Pass activePass;
+  
+  /**
+   * GPU time of each pass in nanoseconds of the newest frame which was read back. A new array is published for each
+   * frame and never modified afterwards, so other threads always see the passes of the same frame.
+   */
+  private volatile long[] passNanos = new long[Pass.values().length];
+  
+  /** Amount of frames which were read back / dropped since the start */
+  private volatile int readFrames = 0;
+  private volatile int droppedFrames = 0;
+  
+  
+  /**
+   * Returns true, if the graphics card supports timer queries (core since OpenGL 3.3)
+   */
+  public static boolean isSupported() {
+    final GLCapabilities caps = GL.getCapabilities();
+    return caps.OpenGL33 || caps.GL_ARB_timer_query;
+  }
+  
+  
+  public GpuProfiler() {
+    for (int[] slotQueries : queries) {
+      glGenQueries(slotQueries);
+    }
+  }
+  
+  
+  /**
+   * Reads back the results of the older frames which are available and prepares the queries of a new frame
+   */
+  public void beginFrame() {
+    slot = (slot + 1) % queryFrames;
+    // The slot which is reused now is the oldest one. Older frames first, so the newest available frame ends up in the results
+    for (int i = 0; i < queryFrames; i++) {
+      final int olderSlot = (slot + i) % queryFrames;
+      if (isPending(olderSlot)) {
+        if (isAvailable(olderSlot)) {
+          read(olderSlot);
+        } else if (olderSlot == slot) {
+          // The queries are reused now, so the frame can't be measured anymore
+          Arrays.fill(pending[slot], false);
+          droppedFrames++;
+        }
+      }
+    }
+  }
+  
+  
+  /**
+   * Starts measuring the given pass. Passes can't be nested.
+   */
+  public void begin(Pass pass) {
+    if (activePass != null) {
+      end();
+    }
+    glBeginQuery(GL_TIME_ELAPSED, queries[slot][pass.ordinal()]);
+    pending[slot][pass.ordinal()] = true;
+    activePass = pass;
+  }
+  
+  
+  /**
+   * Stops measuring the current pass
+   */
+  public void end() {
+    if (activePass != null) {
+      glEndQuery(GL_TIME_ELAPSED);
+      activePass = null;
+    }
+  }
+  
+  
+  /**
+   * Returns the GPU time of the given pass in milliseconds, measured a few frames ago
+   */
+  public double getPassMillis(Pass pass) {
+    return passNanos[pass.ordinal()] / 1e6;
+  }
+  
+  
+  /**
+   * Returns the GPU time of all passes of the frame in milliseconds, measured a few frames ago
+   */
+  public double getFrameMillis() {
+    long frameNanos = 0;
+    for (long nanos : passNanos) {
+      frameNanos += nanos;
+    }
+    return frameNanos / 1e6;
+  }
+  
+  
+  /**
+   * Returns a copy of the GPU time of each pass of the same frame in nanoseconds, indexed by the ordinal of the pass
+   */
+  public long[] getPassNanos() {
+    return passNanos.clone();
+  }
+  
+  
+  /**
+   * Returns the amount of frames which were measured since the start
+   */
+  public int getReadFrameCount() {
+    return readFrames;
+  }
+  
+  
+  /**
+   * Returns the amount of frames whose results were not available when their queries had to be reused
+   */
+  public int getDroppedFrameCount() {
+    return droppedFrames;
+  }
+  
+  
+  /**
+   * Deletes all query objects
+   */
+  public void dispose() {
+    end();
+    for (int[] slotQueries : queries) {
+      glDeleteQueries(slotQueries);
+    }
+  }
+  
+  
+  private boolean isPending(int frameSlot) {
+    for (boolean passPending : pending[frameSlot]) {
+      if (passPending) {
+        return true;
+      }
+    }
+    return false;
+  }
+  
+  
+  /**
+   * Returns true, if the GPU has finished all queries of the given frame slot.
+   * The queries of a frame finish in order, so only the last issued query needs to be checked.
+   */
+  private boolean isAvailable(int frameSlot) {
+    for (int pass = pending[frameSlot].length - 1; pass >= 0; pass--) {
+      if (pending[frameSlot][pass]) {
+        return glGetQueryObjecti(queries[frameSlot][pass], GL_QUERY_RESULT_AVAILABLE) != 0;
+      }
+    }
+    return true;
+  }
+  
+  
+  private void read(int frameSlot) {
+    final long[] frameNanos = new long[pending[frameSlot].length];
+    for (int pass = 0; pass < frameNanos.length; pass++) {
+      frameNanos[pass] = pending[frameSlot][pass] ? glGetQueryObjectui64(queries[frameSlot][pass], GL_QUERY_RESULT) : 0;
+      pending[frameSlot][pass] = false;
+    }
+    passNanos = frameNanos;
+    readFrames++;
+  }
+  
+}
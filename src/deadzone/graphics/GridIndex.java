@@ -0,0 +1,176 @@
+package deadzone.graphics;
+
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+
+/**
+ * Spatial index of iso objects by their grid coordinates.
+ * Allows to visit all objects within a rectangular coordinate range in O(visited cells) instead of
+ * iterating all objects, which is used to cull the objects outside of the viewport.
+ * The coordinates of an object must not change while it is registered in the index, so moving objects
+ * must be removed before and added again after they move.
+ * The cells are stored in an open addressing hash table with primitive keys, so looking up a cell doesn't allocate.
+ */
+public class GridIndex<T extends IIsoObject> {
+  
+  /** Initial amount of slots of the hash table (must be a power of two) */
+  private static final int initialCapacity = 64;
+  
+  /** Key of the cell in each slot, the x coordinate in the upper and the y coordinate in the lower 32 bits */
+  private long[] cellKeys = new long[initialCapacity];
+  
+  /** Objects of the cell in each slot (null if the slot is empty) */
+  private ArrayList<T>[] cellObjects = createSlots(initialCapacity);
+  
+  /** Amount of used slots, the table grows when half of the slots are used */
+  private int cellCount = 0;
+  
+  /** Bounds of all cells which ever contained an object */
+  private int minX = Integer.MAX_VALUE;
+  private int minY = Integer.MAX_VALUE;
+  private int maxX = Integer.MIN_VALUE;
+  private int maxY = Integer.MIN_VALUE;
+  
+  /** Amount of objects in the index */
+  private int size = 0;
+  
+  
+  public void add(T obj) {
+    final int x = obj.getXCoordinate();
+    final int y = obj.getYCoordinate();
+    final long key = key(x, y);
+    int slot = findSlot(key);
+    if (cellObjects[slot] == null) {
+      if (cellCount + 1 > cellObjects.length / 2) {
+        grow();
+        slot = findSlot(key);
+      }
+      cellKeys[slot] = key;
+      cellObjects[slot] = new ArrayList<>(1);
+      cellCount++;
+    }
+    cellObjects[slot].add(obj);
+    minX = Math.min(minX, x);
+    minY = Math.min(minY, y);
+    maxX = Math.max(maxX, x);
+    maxY = Math.max(maxY, y);
+    size++;
+  }
+  
+  
+  public void remove(T obj) {
+    final int slot = findSlot(key(obj.getXCoordinate(), obj.getYCoordinate()));
+    final ArrayList<T> cell = cellObjects[slot];
+    if (cell != null && cell.remove(obj)) {
+      if (cell.isEmpty()) {
+        removeSlot(slot);
+      }
+      size--;
+    }
+  }
+  
+  
+  /**
+   * Returns the amount of objects in the index
+   */
+  public int size() {
+    return size;
+  }
+  
+  
+  /**
+   * Visits all objects whose coordinates are within the given range
+   * @param range Inclusive coordinate range: min x, min y, max x, max y
+   * @return The amount of visited objects
+   */
+  public int forEachInRange(int[] range, Consumer<T> action) {
+    final int fromX = Math.max(range[0], minX);
+    final int fromY = Math.max(range[1], minY);
+    final int toX = Math.min(range[2], maxX);
+    final int toY = Math.min(range[3], maxY);
+    int count = 0;
+    for (int y = fromY; y <= toY; y++) {
+      for (int x = fromX; x <= toX; x++) {
+        final ArrayList<T> cell = cellObjects[findSlot(key(x, y))];
+        if (cell != null) {
+          cell.forEach(action);
+          count += cell.size();
+        }
+      }
+    }
+    return count;
+  }
+  
+  
+  private static long key(int x, int y) {
+    return ((long) x << 32) | (y & 0xFFFFFFFFL);
+  }
+  
+  
+  /**
+   * Returns the slot of the given cell key, or the empty slot where it would be inserted (linear probing)
+   */
+  private int findSlot(long key) {
+    final int mask = cellObjects.length - 1;
+    int slot = hash(key) & mask;
+    while (cellObjects[slot] != null && cellKeys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+  
+  
+  /**
+   * Empties the given slot and moves the following cells of the probe sequence back, so all cells can still be found
+   */
+  private void removeSlot(int slot) {
+    final int mask = cellObjects.length - 1;
+    int next = (slot + 1) & mask;
+    while (cellObjects[next] != null) {
+      final int home = hash(cellKeys[next]) & mask;
+      // The cell may fill the gap, if the gap lies between its home slot and its current slot
+      if (((next - home) & mask) >= ((next - slot) & mask)) {
+        cellKeys[slot] = cellKeys[next];
+        cellObjects[slot] = cellObjects[next];
+        slot = next;
+      }
+      next = (next + 1) & mask;
+    }
+    cellObjects[slot] = null;
+    cellCount--;
+  }
+  
+  
+  /**
+   * Doubles the amount of slots and inserts all cells again
+   */
+  private void grow() {
+    final long[] oldKeys = cellKeys;
+    final ArrayList<T>[] oldObjects = cellObjects;
+    cellKeys = new long[oldKeys.length * 2];
+    cellObjects = createSlots(oldObjects.length * 2);
+    for (int i = 0; i < oldObjects.length; i++) {
+      if (oldObjects[i] != null) {
+        final int slot = findSlot(oldKeys[i]);
+        cellKeys[slot] = oldKeys[i];
+        cellObjects[slot] = oldObjects[i];
+      }
+    }
+  }
+  
+  
+  /**
+   * Spreads the coordinates over all bits, so neighbouring cells don't probe the same slots
+   */
+  private static int hash(long key) {
+    return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+  }
+  
+  
+  @SuppressWarnings("unchecked")
+  private static <T> ArrayList<T>[] createSlots(int capacity) {
+    return (ArrayList<T>[]) new ArrayList[capacity];
+  }
+  
+}
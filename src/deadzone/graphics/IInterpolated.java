@@ -0,0 +1,21 @@
+package deadzone.graphics;
+
+/**
+ * Every object whose state is changed by the simulation ticks of a scene and shall move smoothly, even if the frame rate
+ * is higher than the tick rate, needs to implement this interface.
+ * The object keeps the state of the last two ticks and renders a state between them.
+ */
+public interface IInterpolated {
+  
+  /**
+   * Keeps the current state as previous state. Called before each simulation tick changes the state.
+   */
+  void storeState();
+  
+  /**
+   * Sets the rendered state between the previous and the current state. Called before each rendered frame.
+   * @param alpha Part of the way from the previous (0) to the current state (1)
+   */
+  void interpolate(float alpha);
+  
+}
@@ -0,0 +1,524 @@
+package deadzone.graphics;
+
+import deadzone.assets.Texture;
+import deadzone.assets.TextureArray;
+import deadzone.graphics.worldobjects.Tile;
+import org.lwjgl.opengl.ARBInstancedArrays;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL33;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+import static org.lwjgl.opengl.GL31.*;
+
+
+/**
+ * Draws all tiles of an iso grid with instanced rendering.
+ * All tiles share the geometry of a single unit quad, so only 20 bytes per tile are uploaded
+ * (grid coordinate, texture layer, tint and atlas region), and the whole grid is drawn with one draw call per texture
+ * (or atlas page or array texture). Tiles whose textures are layers of the same array texture are drawn together
+ * and only differ by their layer index.
+ * The per-tile data of a grid stays in the GPU memory until tiles are added to or removed from the grid. If a tile
+ * only changes its appearance within the same texture group (like another layer of the same array texture), only its
+ * 20 bytes are overwritten.
+ * The data is prepared on the game thread ({@link #prepare(IsoGrid)}, {@link #preparePatch(GridInstanceData, Collection)})
+ * and uploaded by the thread which renders, so tiles can already be changed for the next frame while the current one is drawn.
+ */
+public class InstancedTileRenderer {
+  
+  /**
+   * Size of the per-tile data: 2 shorts grid coordinate, 1 unsigned short array layer + padding, 4 unsigned bytes tint,
+   * 4 unsigned shorts texture coordinates of the atlas region (left, top, right, bottom)
+   */
+  private static final int bytesPerInstance = 20;
+  
+  /** The renderer which owns this object and provides the GPU handles of the textures and the camera */
+  private final Renderer renderer;
+  
+  /** Shader program which places the unit quad at the grid coordinate of each instance */
+  private final ShaderProgram program;
+  
+  /** VAO with the unit quad and the shared quad index buffer attached. Instance attributes are pointed to the drawn grid */
+  private final VertexArrayObject vao;
+  
+  /** The handler to access the unit quad in the GPU */
+  private final int quadVboId;
+  
+  /** Attribute locations of the per-tile data */
+  private final int gridPositionAttribute;
+  private final int textureIndexAttribute;
+  private final int tintAttribute;
+  private final int uvRectAttribute;
+  
+  /** The GPU data of all grids which are currently drawn */
+  private final HashMap<IsoGrid, GridInstances> grids = new HashMap<>();
+  
+  /** The value of the uniform "useTextureArray" which was set the last time */
+  private boolean useTextureArray = false;
+  
+  /** Amount of draw calls which were issued in the current (or last finished) frame */
+  private int drawCount = 0;
+  
+  
+  /**
+   * The per-tile data of a single grid, sorted by texture, as it was prepared on the game thread.
+   * It isn't modified anymore after it was prepared, except that the buffer is freed once it was uploaded.
+   */
+  static class GridInstanceData {
+    /** Textures used by the grid in the order they appear in the instance buffer (null if the group uses an array texture) */
+    final ArrayList<Texture> textures = new ArrayList<>();
+    /** Array textures used by the grid in the order they appear in the instance buffer (null if the group uses a 2D texture) */
+    final ArrayList<TextureArray> textureArrays = new ArrayList<>();
+    /** The array texture or bound texture of each group, which tiles must keep to be updated in place */
+    final ArrayList<Object> groupKeys = new ArrayList<>();
+    /** Index of the first instance which uses the (array) texture with the same index */
+    final ArrayList<Integer> firstInstances = new ArrayList<>();
+    /** Amount of instances which uses the texture with the same index */
+    final ArrayList<Integer> instanceCounts = new ArrayList<>();
+    /** The y coordinate of every instance. Within a group, the instances are sorted by it to cull whole rows */
+    int[] instanceRows;
+    /** Index of the instance of every tile */
+    final HashMap<Tile, Integer> instanceIndices = new HashMap<>();
+    /** Revision of the grid the data was prepared for */
+    int revision;
+    /** The per-tile data in native memory (null after it was uploaded) */
+    ByteBuffer data;
+  }
+  
+  
+  /**
+   * The new per-tile data of single tiles, which overwrites their instances in the uploaded data of the grid.
+   * It isn't modified anymore after it was prepared, except that the buffer is freed once it was uploaded.
+   */
+  static class GridInstancePatch {
+    /** The data of the grid whose instances are overwritten */
+    final GridInstanceData layout;
+    /** Index of the instance of each changed tile */
+    final int[] instanceIndices;
+    /** Inclusive coordinate range of the changed tiles: min x, min y, max x, max y */
+    final int[] changedRange;
+    /** The per-tile data of the changed tiles in the order of the indices (null after it was uploaded) */
+    ByteBuffer data;
+  
+    GridInstancePatch(GridInstanceData layout, int[] instanceIndices, int[] changedRange) {
+      this.layout = layout;
+      this.instanceIndices = instanceIndices;
+      this.changedRange = changedRange;
+    }
+  }
+  
+  
+  /**
+   * The per-tile data of a single grid in the GPU memory.
+   */
+  private static class GridInstances {
+    /** The handler to access the instance buffer of the grid in the GPU */
+    final int vboId = glGenBuffers();
+    /** Layout of the uploaded instance buffer */
+    GridInstanceData layout;
+    /** Frame number in which the grid was drawn the last time */
+    int lastUsedFrame;
+  }
+  
+  
+  /**
+   * Returns true, if the graphics card supports per-instance vertex attributes
+   * (core since OpenGL 3.3, otherwise available through ARB_instanced_arrays)
+   */
+  public static boolean isSupported() {
+    final GLCapabilities caps = GL.getCapabilities();
+    return caps.OpenGL33 || caps.GL_ARB_instanced_arrays;
+  }
+  
+  
+  public InstancedTileRenderer(Renderer renderer, QuadIndexBuffer quadIndices) throws Exception {
+    this.renderer = renderer;
+    program = renderer.getShaders().get(ShaderVariant.INSTANCED_TILE);
+  
+    final int positionAttribute = program.getAttribLocation("position");
+    final int texcoordAttribute = program.getAttribLocation("texcoord");
+    gridPositionAttribute = program.getAttribLocation("gridPosition");
+    textureIndexAttribute = program.getAttribLocation("textureIndex");
+    tintAttribute = program.getAttribLocation("tint");
+    uvRectAttribute = program.getAttribLocation("uvRect");
+  
+    // Create the VAO and attach the shared index buffer, so the unit quad is drawn as two triangles
+    vao = new VertexArrayObject();
+    vao.attachQuadIndexBuffer(quadIndices);
+  
+    // Upload the unit quad (top left, bottom left, bottom right, top right) with x, y, u, v per vertex
+    quadVboId = glGenBuffers();
+    GLStateCache.bindArrayBuffer(quadVboId);
+    try (MemoryStack stack = MemoryStack.stackPush()) {
+      final FloatBuffer quad = stack.floats(
+        0, 1, 0, 1,
+        0, 0, 0, 0,
+        1, 0, 1, 0,
+        1, 1, 1, 1
+      );
+      glBufferData(GL_ARRAY_BUFFER, quad, GL_STATIC_DRAW);
+    }
+    glEnableVertexAttribArray(positionAttribute);
+    glVertexAttribPointer(positionAttribute, 2, GL_FLOAT, false, 4 * Float.BYTES, 0);
+    glEnableVertexAttribArray(texcoordAttribute);
+    glVertexAttribPointer(texcoordAttribute, 2, GL_FLOAT, false, 4 * Float.BYTES, 2 * Float.BYTES);
+  
+    // The per-tile attributes advance once per instance instead of once per vertex
+    for (int attribute : new int[] { gridPositionAttribute, textureIndexAttribute, tintAttribute, uvRectAttribute }) {
+      if (attribute != -1) {
+        glEnableVertexAttribArray(attribute);
+        setAttributeDivisor(attribute, 1);
+      }
+    }
+  }
+  
+  
+  /**
+   * Draws all tiles of the given grid with one instanced draw call per texture.
+   * Since the instances of each texture are sorted by their row, only the rows within the visible range are drawn,
+   * so the instance data doesn't have to be uploaded again when the visible area changes.
+   * @param data The per-tile data, if the grid was changed since it was drawn the last time (otherwise null)
+   * @param patch The data of single changed tiles, if only they were changed (otherwise null)
+   * @param tileSize Normalized width and height of a tile
+   * @param visibleRange Inclusive coordinate range of the visible tiles: min x, min y, max x, max y (null to draw all tiles)
+   * @return The amount of submitted tiles. These are all tiles of the visible rows, so in the iso projection most of them
+   *         may be outside of the viewport and are only clipped by the GPU.
+   */
+  public int render(IsoGrid grid, GridInstanceData data, GridInstancePatch patch, float[] tileSize, int[] visibleRange, int frameNumber) {
+    final GridInstances instances = updateInstances(grid, data, patch, frameNumber);
+    final GridInstanceData layout = instances.layout;
+    if (layout == null) {
+      return 0;
+    }
+  
+    program.use();
+    renderer.getCamera().bind(true);
+    glUniform2f(program.getUniformLocation("tileSize"), tileSize[0], tileSize[1]);
+  
+    vao.bind();
+    GLStateCache.bindArrayBuffer(instances.vboId);
+    int submittedCount = 0;
+    for (int i = 0; i < layout.textures.size(); i++) {
+      // Find the instances of the texture group which are in the visible rows
+      int first = layout.firstInstances.get(i);
+      int end = first + layout.instanceCounts.get(i);
+      if (visibleRange != null) {
+        first = lowerBound(layout.instanceRows, first, end, visibleRange[1]);
+        end = lowerBound(layout.instanceRows, first, end, visibleRange[3] + 1);
+      }
+      if (first == end) {
+        continue;
+      }
+  
+      // Point the per-tile attributes to the first visible instance of the texture group
+      final long offset = (long) first * bytesPerInstance;
+      if (gridPositionAttribute != -1) {
+        glVertexAttribPointer(gridPositionAttribute, 2, GL_SHORT, false, bytesPerInstance, offset);
+      }
+      if (textureIndexAttribute != -1) {
+        glVertexAttribIPointer(textureIndexAttribute, 1, GL_UNSIGNED_SHORT, bytesPerInstance, offset + 4);
+      }
+      if (tintAttribute != -1) {
+        glVertexAttribPointer(tintAttribute, 4, GL_UNSIGNED_BYTE, true, bytesPerInstance, offset + 8);
+      }
+      if (uvRectAttribute != -1) {
+        glVertexAttribPointer(uvRectAttribute, 4, GL_UNSIGNED_SHORT, true, bytesPerInstance, offset + 12);
+      }
+  
+      final TextureArray textureArray = layout.textureArrays.get(i);
+      if (textureArray != null) {
+        setUseTextureArray(true);
+        GLStateCache.bindTextureArray(ShaderRegistry.textureArrayUnit, renderer.getTextureArrayHandle(textureArray));
+      } else {
+        setUseTextureArray(false);
+        GLStateCache.bindTexture(ShaderRegistry.textureUnit, renderer.getTextureHandle(layout.textures.get(i)));
+      }
+      glDrawElementsInstanced(GL_TRIANGLES, QuadIndexBuffer.indicesPerQuad, GL_UNSIGNED_INT, 0, end - first);
+      drawCount++;
+      submittedCount += end - first;
+    }
+    return submittedCount;
+  }
+  
+  
+  /**
+   * Uploads the changed per-tile data of the grid without drawing it
+   * @param data The per-tile data, if the grid was changed since it was drawn the last time (otherwise null)
+   * @param patch The data of single changed tiles, if only they were changed (otherwise null)
+   */
+  public void update(IsoGrid grid, GridInstanceData data, GridInstancePatch patch, int frameNumber) {
+    updateInstances(grid, data, patch, frameNumber);
+  }
+  
+  
+  private GridInstances updateInstances(IsoGrid grid, GridInstanceData data, GridInstancePatch patch, int frameNumber) {
+    GridInstances instances = grids.get(grid);
+    if (instances == null) {
+      instances = new GridInstances();
+      grids.put(grid, instances);
+    }
+    instances.lastUsedFrame = frameNumber;
+    if (data != null) {
+      upload(data, instances);
+    }
+    if (patch != null) {
+      upload(patch, instances);
+    }
+    return instances;
+  }
+  
+  
+  /**
+   * Resets the draw call counter for a new frame
+   */
+  public void begin() {
+    drawCount = 0;
+  }
+  
+  
+  /**
+   * Returns the amount of draw calls which were issued in the current (or last finished) frame
+   */
+  public int getDrawCount() {
+    return drawCount;
+  }
+  
+  
+  /**
+   * Keeps the instance buffer of the grid in the GPU memory for this frame, although the grid is not drawn
+   * (because its tiles were cached by the static layer cache)
+   */
+  public void keep(IsoGrid grid, int frameNumber) {
+    final GridInstances instances = grids.get(grid);
+    if (instances != null) {
+      instances.lastUsedFrame = frameNumber;
+    }
+  }
+  
+  
+  /**
+   * Removes the GPU data of all grids which were not drawn in the given frame
+   */
+  public void evictUnusedGrids(int frameNumber) {
+    grids.entrySet().removeIf(entry -> {
+      if (entry.getValue().lastUsedFrame != frameNumber) {
+        GLStateCache.deleteBuffer(entry.getValue().vboId);
+        return true;
+      }
+      return false;
+    });
+  }
+  
+  
+  /**
+   * Free up all resources from GPU memory
+   */
+  public void dispose() {
+    grids.forEach((grid, instances) -> GLStateCache.deleteBuffer(instances.vboId));
+    grids.clear();
+    GLStateCache.deleteBuffer(quadVboId);
+    vao.delete();
+  }
+  
+  
+  /**
+   * Writes the per-tile data of all tiles of the grid into native memory, grouped by texture.
+   * This doesn't use OpenGL, so it can be called on the game thread.
+   */
+  static GridInstanceData prepare(IsoGrid grid) {
+    final GridInstanceData instances = new GridInstanceData();
+    // Group the tiles by their array texture or bound texture, so each group can be drawn with a single draw call
+    final LinkedHashMap<Object, ArrayList<Tile>> groups = new LinkedHashMap<>();
+    for (Tile tile : grid.getTiles()) {
+      groups.computeIfAbsent(getGroupKey(tile.getTexture()), k -> new ArrayList<>()).add(tile);
+    }
+  
+    final ByteBuffer data = MemoryUtil.memAlloc(Math.max(1, grid.getTiles().size()) * bytesPerInstance);
+    instances.instanceRows = new int[grid.getTiles().size()];
+    int instanceCount = 0;
+    for (Object key : groups.keySet()) {
+      final ArrayList<Tile> tiles = groups.get(key);
+      final boolean isArray = key instanceof TextureArray;
+      instances.groupKeys.add(key);
+      instances.textures.add(isArray ? null : (Texture) key);
+      instances.textureArrays.add(isArray ? (TextureArray) key : null);
+      tiles.sort((a, b) -> a.getYCoordinate() != b.getYCoordinate()
+        ? Integer.compare(a.getYCoordinate(), b.getYCoordinate())
+        : Integer.compare(a.getXCoordinate(), b.getXCoordinate()));
+      instances.firstInstances.add(instanceCount);
+      instances.instanceCounts.add(tiles.size());
+      for (Tile tile : tiles) {
+        final int index = data.position() / bytesPerInstance;
+        instances.instanceRows[index] = tile.getYCoordinate();
+        instances.instanceIndices.put(tile, index);
+        putInstance(data, tile, isArray);
+      }
+      instanceCount += tiles.size();
+    }
+    data.flip();
+    instances.data = data;
+    instances.revision = grid.getRevision();
+    return instances;
+  }
+  
+  
+  /**
+   * Writes the per-tile data of the given tiles, which overwrites their instances in the given data of the grid.
+   * This doesn't use OpenGL, so it can be called on the game thread.
+   * @return Null, if a tile is not part of the data or moved to another texture group, so the whole grid must be prepared again
+   */
+  static GridInstancePatch preparePatch(GridInstanceData layout, Collection<Tile> tiles) {
+    final int[] instanceIndices = new int[tiles.size()];
+    final int[] changedRange = { Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE };
+    int i = 0;
+    for (Tile tile : tiles) {
+      final Integer index = layout.instanceIndices.get(tile);
+      if (index == null || layout.groupKeys.get(getGroup(layout, index)) != getGroupKey(tile.getTexture())) {
+        return null;
+      }
+      instanceIndices[i++] = index;
+      changedRange[0] = Math.min(changedRange[0], tile.getXCoordinate());
+      changedRange[1] = Math.min(changedRange[1], tile.getYCoordinate());
+      changedRange[2] = Math.max(changedRange[2], tile.getXCoordinate());
+      changedRange[3] = Math.max(changedRange[3], tile.getYCoordinate());
+    }
+  
+    final GridInstancePatch patch = new GridInstancePatch(layout, instanceIndices, changedRange);
+    patch.data = MemoryUtil.memAlloc(tiles.size() * bytesPerInstance);
+    for (Tile tile : tiles) {
+      putInstance(patch.data, tile, tile.getTexture().getTextureArray() != null);
+    }
+    patch.data.flip();
+    return patch;
+  }
+  
+  
+  /**
+   * Returns the array texture or the bound texture of the given texture, by which the tiles are grouped
+   */
+  private static Object getGroupKey(Texture texture) {
+    return texture.getTextureArray() != null ? texture.getTextureArray() : texture.getBoundTexture();
+  }
+  
+  
+  /**
+   * Returns the index of the texture group which contains the given instance
+   */
+  private static int getGroup(GridInstanceData layout, int instanceIndex) {
+    int group = 0;
+    while (group + 1 < layout.firstInstances.size() && layout.firstInstances.get(group + 1) <= instanceIndex) {
+      group++;
+    }
+    return group;
+  }
+  
+  
+  /**
+   * Writes the per-tile data of a single tile at the position of the buffer
+   */
+  private static void putInstance(ByteBuffer data, Tile tile, boolean isArray) {
+    final Color tint = tile.getTint();
+    data.putShort((short) tile.getXCoordinate());
+    data.putShort((short) tile.getYCoordinate());
+    data.putShort((short) (isArray ? tile.getTexture().getArrayLayer() : 0));
+    data.putShort((short) 0);
+    if (tint == null) {
+      data.putInt(0xFFFFFFFF);
+    } else {
+      data.put((byte) tint.getRed()).put((byte) tint.getGreen()).put((byte) tint.getBlue()).put((byte) tint.getAlpha());
+    }
+    // Array layers always cover the whole layer, only atlas pages need the region of the texture
+    final Texture texture = tile.getTexture();
+    if (isArray) {
+      data.putShort((short) 0).putShort((short) 0).putShort((short) 0xFFFF).putShort((short) 0xFFFF);
+    } else {
+      data.putShort(normalizedShort(texture.mapU(0))).putShort(normalizedShort(texture.mapV(0)));
+      data.putShort(normalizedShort(texture.mapU(1))).putShort(normalizedShort(texture.mapV(1)));
+    }
+  }
+  
+  
+  /**
+   * Uploads the prepared per-tile data into the instance buffer of the grid and frees the native memory
+   */
+  private void upload(GridInstanceData data, GridInstances instances) {
+    GLStateCache.bindArrayBuffer(instances.vboId);
+    glBufferData(GL_ARRAY_BUFFER, data.data, GL_STATIC_DRAW);
+    MemoryUtil.memFree(data.data);
+    data.data = null;
+    instances.layout = data;
+  }
+  
+  
+  /**
+   * Overwrites the instances of the changed tiles in the instance buffer of the grid and frees the native memory
+   */
+  private void upload(GridInstancePatch patch, GridInstances instances) {
+    // The indices are only valid for the data they were prepared for
+    if (instances.layout == patch.layout) {
+      GLStateCache.bindArrayBuffer(instances.vboId);
+      for (int i = 0; i < patch.instanceIndices.length; i++) {
+        patch.data.limit((i + 1) * bytesPerInstance).position(i * bytesPerInstance);
+        glBufferSubData(GL_ARRAY_BUFFER, (long) patch.instanceIndices[i] * bytesPerInstance, patch.data);
+      }
+    }
+    MemoryUtil.memFree(patch.data);
+    patch.data = null;
+  }
+  
+  
+  /**
+   * Returns the index of the first value within the given range of the sorted array which is not lower than the key
+   */
+  private static int lowerBound(int[] values, int from, int to, int key) {
+    while (from < to) {
+      final int middle = (from + to) >>> 1;
+      if (values[middle] < key) {
+        from = middle + 1;
+      } else {
+        to = middle;
+      }
+    }
+    return from;
+  }
+  
+  
+  /**
+   * Selects whether the fragment shader samples the array texture or the 2D texture
+   */
+  private void setUseTextureArray(boolean useTextureArray) {
+    if (this.useTextureArray != useTextureArray) {
+      glUniform1i(program.getUniformLocation("useTextureArray"), useTextureArray ? 1 : 0);
+      this.useTextureArray = useTextureArray;
+    }
+  }
+  
+  
+  /**
+   * Converts a value from 0 to 1 into an unsigned short, which is normalized to 0 to 1 again by the GPU
+   */
+  private static short normalizedShort(float value) {
+    return (short) Math.round(value * 0xFFFF);
+  }
+  
+  
+  /**
+   * Sets the rate at which the given attribute advances during instanced rendering
+   */
+  private static void setAttributeDivisor(int attribute, int divisor) {
+    if (GL.getCapabilities().OpenGL33) {
+      GL33.glVertexAttribDivisor(attribute, divisor);
+    } else {
+      ARBInstancedArrays.glVertexAttribDivisorARB(attribute, divisor);
+    }
+  }
+  
+}
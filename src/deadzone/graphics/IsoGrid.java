@@ -1,8 +1,13 @@
 package deadzone.graphics;
 
+import deadzone.Util;
 import deadzone.graphics.worldobjects.Tile;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Consumer;
 
 
 /**
@@ -22,7 +27,16 @@ public class IsoGrid {
   private final int tileCountY;
   
   /** Stores references to all tiles in this grid */
-  private ArrayList<Tile> tiles;    // TODO: Stattdessen eine 2D ArrayList mit den Koordinaten als Identifier nutzen
+  private final ArrayList<Tile> tiles = new ArrayList<>();    // TODO: Stattdessen eine 2D ArrayList mit den Koordinaten als Identifier nutzen
+  
+  /** The tiles by their coordinates, used to find the tiles within the viewport */
+  private final GridIndex<Tile> tileIndex = new GridIndex<>();
+  
+  /** Increased whenever tiles are added or removed, so cached GPU data of the grid knows when it must be built again */
+  private int revision = 0;
+  
+  /** Tiles whose appearance was changed since the grid was submitted the last time, so only their GPU data is updated */
+  private final LinkedHashSet<Tile> changedTiles = new LinkedHashSet<>();
   
   
   /**
@@ -69,4 +83,93 @@ public class IsoGrid {
     return tileCountY;
   }
   
-}
\ No newline at end of file
+  /**
+   * Adds a tile to this grid, so it will be rendered together with all other tiles of the grid
+   */
+  public void addTile(Tile tile) {
+    tiles.add(tile);
+    tileIndex.add(tile);
+    markChanged();
+  }
+  
+  /**
+   * Removes a tile from this grid
+   */
+  public void removeTile(Tile tile) {
+    if (tiles.remove(tile)) {
+      tileIndex.remove(tile);
+      changedTiles.remove(tile);
+      markChanged();
+    }
+  }
+  
+  /**
+   * @return All tiles of this grid
+   */
+  public ArrayList<Tile> getTiles() {
+    return tiles;
+  }
+  
+  /**
+   * Visits all tiles whose coordinates are within the given range
+   * @param range Inclusive coordinate range: min x, min y, max x, max y
+   * @return The amount of visited tiles
+   */
+  public int forEachTileInRange(int[] range, Consumer<Tile> action) {
+    return tileIndex.forEachInRange(range, action);
+  }
+  
+  /**
+   * Converts an area of the world (in normalized coordinates, like the camera returns it) into the range of
+   * grid coordinates whose tiles intersect the area
+   * @param worldBounds Min x, min y, max x, max y of the area
+   * @param margin Amount of tiles which are added to each side of the range, for objects which exceed their tile
+   * @return Inclusive coordinate range: min x, min y, max x, max y
+   */
+  public int[] getCoordinateRange(float[] worldBounds, int margin) {
+    final float width = Util.normalizePixelWidth(tileWidth);
+    final float height = Util.normalizePixelHeight(tileHeight);
+    // Tile x covers the area from x * width to (x + 1) * width
+    return new int[] {
+      (int) Math.ceil(worldBounds[0] / width) - 1 - margin,
+      (int) Math.ceil(worldBounds[1] / height) - 1 - margin,
+      (int) Math.floor(worldBounds[2] / width) + margin,
+      (int) Math.floor(worldBounds[3] / height) + margin
+    };
+  }
+  
+  /**
+   * Must be called whenever the tiles of this grid change in a way which requires to build its GPU data again
+   */
+  public void markChanged() {
+    revision++;
+  }
+  
+  /**
+   * Must be called whenever a tile of this grid changes its appearance (like its texture or tint).
+   * Only the data of the tile is updated, unless it can't keep its place in the GPU data of the grid.
+   */
+  public void markTileChanged(Tile tile) {
+    changedTiles.add(tile);
+  }
+  
+  /**
+   * @return Number which changes whenever tiles were added to or removed from the grid
+   */
+  public int getRevision() {
+    return revision;
+  }
+  
+  /**
+   * Returns the tiles which were changed since the last call and forgets them
+   */
+  public List<Tile> takeChangedTiles() {
+    if (changedTiles.isEmpty()) {
+      return Collections.emptyList();
+    }
+    final ArrayList<Tile> tiles = new ArrayList<>(changedTiles);
+    changedTiles.clear();
+    return tiles;
+  }
+  
+}
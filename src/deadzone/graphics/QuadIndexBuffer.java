@@ -0,0 +1,86 @@
+package deadzone.graphics;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.IntBuffer;
+
+import static org.lwjgl.opengl.GL15.*;
+
+
+/**
+ * This class represents the element buffer object (EBO) which is shared by all quad meshes.
+ * Every quad consists of 4 vertices (top left, bottom left, bottom right, top right) and is drawn
+ * as two triangles by the indices 0, 1, 2 and 2, 3, 0. Since those indices are the same for every quad,
+ * they are generated only once for a large amount of quads and reused by every draw call.
+ */
+public class QuadIndexBuffer {
+  
+  /** Amount of indices per quad (two triangles) */
+  public static final int indicesPerQuad = 6;
+  
+  /** Amount of vertices per quad */
+  public static final int verticesPerQuad = 4;
+  
+  /** Amount of quads the buffer is created for initially */
+  private static final int initialQuadCapacity = 4096;
+  
+  /** The handler to access the native EBO in the GPU */
+  private final int eboId;
+  
+  /** Amount of quads which can be drawn with the current indices */
+  private int quadCapacity = 0;
+  
+  
+  /**
+   * Creates the shared index buffer and fills it with the indices for the initial amount of quads
+   */
+  public QuadIndexBuffer() {
+    eboId = glGenBuffers();
+    ensureCapacity(initialQuadCapacity);
+  }
+  
+  
+  public int getID() {
+    return eboId;
+  }
+  
+  
+  /**
+   * Binds the index buffer. If a VAO is bound, the binding becomes part of its state.
+   */
+  public void bind() {
+    glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, eboId);
+  }
+  
+  
+  /**
+   * Makes sure the buffer contains indices for at least the given amount of quads.
+   * If not, the buffer is rebuilt with (at least) twice the size. The data is uploaded through the array buffer binding,
+   * so the element array binding of the currently bound VAO is not touched.
+   */
+  public void ensureCapacity(int quadCount) {
+    if (quadCount <= quadCapacity) {
+      return;
+    }
+    final int newCapacity = Math.max(quadCount, quadCapacity * 2);
+    final IntBuffer indices = MemoryUtil.memAllocInt(newCapacity * indicesPerQuad);
+    for (int quad = 0; quad < newCapacity; quad++) {
+      final int firstVertex = quad * verticesPerQuad;
+      // Triangle 1
+      indices.put(firstVertex).put(firstVertex + 1).put(firstVertex + 2);
+      // Triangle 2
+      indices.put(firstVertex + 2).put(firstVertex + 3).put(firstVertex);
+    }
+    indices.flip();
+    GLStateCache.bindArrayBuffer(eboId);
+    glBufferData(GL_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+    MemoryUtil.memFree(indices);
+    quadCapacity = newCapacity;
+  }
+  
+  
+  public void delete() {
+    GLStateCache.deleteBuffer(eboId);
+  }
+  
+}
@@ -0,0 +1,65 @@
+package deadzone.graphics;
+
+import deadzone.assets.Texture;
+
+
+/**
+ * Snapshot of everything the renderer needs to draw a single object, taken when the object is registered.
+ * Since the vertex data array of a VBO is replaced instead of modified (see {@link VertexBufferObject#setVertexData(float[])}),
+ * the game thread can already change the object for the next frame while the command is drawn.
+ * Commands are pooled by the render queue, so their fields are only valid until the queue is cleared.
+ */
+public class RenderCommand {
+  
+  /** The VBO of the object, only used by the retained (single-threaded) render path */
+  VertexBufferObject vbo;
+  
+  /** The vertex data of the object at the moment it was registered */
+  float[] vertexData;
+  
+  /** Float range of the vertex data which was modified since the object was registered the last time (-1 if unmodified) */
+  int dirtyFrom;
+  int dirtyTo;
+  
+  /** Amount of vertices to draw */
+  int vertexCount;
+  
+  /** The OpenGL draw type like GL_TRIANGLES */
+  int drawType;
+  
+  /** The texture of the object */
+  Texture texture;
+  
+  /** If true, the object is drawn with the isometric projection */
+  boolean isIso;
+  
+  /** The clip space depth of the object, derived from its sort key */
+  float depth;
+  
+  /** The shader program variant the object is drawn with */
+  ShaderVariant shaderVariant;
+  
+  
+  /**
+   * Takes the snapshot of the given object
+   */
+  void set(IRenderable obj) {
+    vbo = obj.getVBO();
+    vbo.takeSnapshot(this);
+    vertexCount = obj.getVertexCount();
+    drawType = obj.getGL_TYPE();
+    texture = vbo.getTexture();
+    isIso = vbo.isIso();
+  }
+  
+  
+  /**
+   * Releases the references of the command, so it doesn't keep removed objects alive
+   */
+  void clear() {
+    vbo = null;
+    vertexData = null;
+    texture = null;
+  }
+  
+}
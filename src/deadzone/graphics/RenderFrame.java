@@ -0,0 +1,71 @@
+package deadzone.graphics;
+
+import deadzone.math.Matrix4x4;
+
+import java.util.ArrayList;
+
+
+/**
+ * Everything the renderer needs to draw a single frame, built by the game thread while the render thread
+ * still draws an older frame. Once a frame was submitted, the game thread doesn't touch it anymore until
+ * the renderer hands it back for reuse.
+ */
+public class RenderFrame {
+  
+  /**
+   * A grid which is drawn with instanced rendering in this frame
+   */
+  static class GridEntry {
+    final IsoGrid grid;
+    /** The per-tile data, if the grid was changed since it was submitted the last time (otherwise null) */
+    final InstancedTileRenderer.GridInstanceData data;
+    /** The data of single tiles, if only their appearance was changed since the grid was submitted the last time (otherwise null) */
+    final InstancedTileRenderer.GridInstancePatch patch;
+    /** Normalized width and height of a tile */
+    final float[] tileSize;
+    /** Inclusive coordinate range of the visible tiles (null to draw all tiles) */
+    final int[] visibleRange;
+    /** Amount of tiles of the grid at the moment it was registered */
+    final int tileCount;
+  
+    GridEntry(IsoGrid grid, InstancedTileRenderer.GridInstanceData data, InstancedTileRenderer.GridInstancePatch patch,
+              float[] tileSize, int[] visibleRange, int tileCount) {
+      this.grid = grid;
+      this.data = data;
+      this.patch = patch;
+      this.tileSize = tileSize;
+      this.visibleRange = visibleRange;
+      this.tileCount = tileCount;
+    }
+  }
+  
+  /** The snapshots of all objects registered for this frame, sorted before the frame is submitted */
+  final RenderQueue renderQueue = new RenderQueue();
+  
+  /** Iso grids whose tiles are drawn with instanced rendering in this frame */
+  final ArrayList<GridEntry> grids = new ArrayList<>();
+  
+  /** The combined projection and view matrix for isometric rendering of this frame */
+  Matrix4x4 isoViewProjection;
+  
+  /** Size of the window the frame is drawn for */
+  int windowWidth;
+  int windowHeight;
+  
+  /** Amount of objects which were registered / skipped by viewport culling while the frame was built (without instanced tiles) */
+  int drawnObjects;
+  int culledObjects;
+  
+  
+  /**
+   * Prepares the frame for reuse and drops the references to the objects of the scene
+   */
+  void clear() {
+    renderQueue.clear();
+    grids.clear();
+    isoViewProjection = null;
+    drawnObjects = 0;
+    culledObjects = 0;
+  }
+  
+}
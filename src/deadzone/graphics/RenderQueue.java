@@ -0,0 +1,233 @@
+package deadzone.graphics;
+
+import java.util.Arrays;
+
+
+/**
+ * Collects the render commands of all objects which shall be rendered in a frame together with a 64-bit sort key
+ * and sorts them with a radix sort before they are submitted to the GPU.
+ * The key is packed in a way that all opaque objects come first, sorted to minimize the program, VAO and texture
+ * switches and from front to back within the same render state, so the depth test rejects hidden fragments early.
+ * The translucent objects follow from back to front, so they are blended over everything behind them:
+ * <pre>
+ * opaque:      | 0 (1) | program (8) | draw type (3) | texture (16) | inverted layer (4) | inverted depth (32) |
+ * translucent: | 1 (1) | layer (4)   | depth (32)    | program (8)  | draw type (3)      | texture (16)        |
+ * </pre>
+ * The sort is stable, so objects with equal keys keep the order in which they were submitted.
+ * Layer and depth are also converted into the clip space depth of the object, so the depth test keeps the layer order.
+ */
+public class RenderQueue {
+  
+  /** Layer for world objects which are rendered with the isometric projection */
+  public static final int LAYER_WORLD = 0;
+  
+  /** Layer for UI elements which are rendered above the world */
+  public static final int LAYER_UI = 1;
+  
+  /** Amount of bits of the depth (per layer) which are distinguished by the clip space depth */
+  private static final int clipDepthBits = 18;
+  
+  /** Radix sort processes the keys in 8 passes with 8 bits each */
+  private static final int radixBits = 8;
+  private static final int radixSize = 1 << radixBits;
+  
+  /** The commands of the submitted objects in the order they were submitted (pooled, so the array also contains unused commands) */
+  private RenderCommand[] items;
+  
+  /** Sort key per submitted object */
+  private long[] keys;
+  
+  /** Indices of the submitted objects in sorted order (after {@link #sort()}) */
+  private int[] order;
+  
+  /** Temporary buffers for the radix sort, swapped with keys and order after each pass */
+  private long[] tmpKeys;
+  private int[] tmpOrder;
+  
+  /** Histogram of the current radix sort pass */
+  private final int[] counts = new int[radixSize];
+  
+  /** Amount of submitted objects */
+  private int size = 0;
+  
+  
+  public RenderQueue() {
+    this(1024);
+  }
+  
+  public RenderQueue(int initialCapacity) {
+    items = new RenderCommand[initialCapacity];
+    keys = new long[initialCapacity];
+    order = new int[initialCapacity];
+    tmpKeys = new long[initialCapacity];
+    tmpOrder = new int[initialCapacity];
+  }
+  
+  
+  /**
+   * Packs the render state of an object into a sort key.
+   * @param layer Layer of the object (0-15), lower layers are drawn first
+   * @param translucent If true, the object is sorted by depth before the render state
+   * @param program Identifier of the shader program (only the lower 8 bits are used)
+   * @param drawType OpenGL draw type like GL_TRIANGLES (only the lower 3 bits are used)
+   * @param texture Identifier of the texture (only the lower 16 bits are used)
+   * @param depth Order within the layer, lower values are drawn first (for translucent objects: the farthest first)
+   */
+  public static long createKey(int layer, boolean translucent, int program, int drawType, int texture, int depth) {
+    final long depthBits = (depth ^ 0x80000000) & 0xFFFFFFFFL;   // flip sign bit, so negative depths are sorted first
+    final long paintOrder = ((long) (layer & 0xF) << 32) | depthBits;
+    final long stateBits = ((long) (program & 0xFF) << 19) | ((long) (drawType & 0x7) << 16) | (texture & 0xFFFF);
+    if (translucent) {
+      return (1L << 63) | (paintOrder << 27) | stateBits;
+    }
+    return (stateBits << 36) | (~paintOrder & 0xFFFFFFFFFL);
+  }
+  
+  
+  /**
+   * Returns true, if the given key was created for a translucent object
+   */
+  public static boolean isTranslucent(long key) {
+    return key < 0;
+  }
+  
+  
+  /**
+   * Returns the clip space depth (-1 to 1) of the object with the given key.
+   * Objects which are drawn later in the painter's order (higher layer or depth) are nearer.
+   * The depth 1 (the far plane) is never returned, it's left for the background.
+   */
+  public static float getClipDepth(long key) {
+    final long paintOrder = isTranslucent(key) ? (key >>> 27) & 0xFFFFFFFFFL : ~key & 0xFFFFFFFFFL;
+    final int layer = (int) (paintOrder >>> 32);
+    final int depth = (int) paintOrder ^ 0x80000000;
+    final int maxDepth = (1 << (clipDepthBits - 1)) - 1;
+    final int clampedDepth = Math.max(-maxDepth - 1, Math.min(maxDepth, depth));
+    final int order = (layer << clipDepthBits) + clampedDepth + maxDepth + 1;
+    return (float) (1.0 - (order + 1) * (2.0 / (1 << (clipDepthBits + 4))));
+  }
+  
+  
+  /**
+   * Adds a snapshot of the object with its sort key to the queue
+   * @param shaderVariant The shader program variant the object is drawn with
+   */
+  public void submit(IRenderable obj, long key, ShaderVariant shaderVariant) {
+    if (size == items.length) {
+      grow();
+    }
+    if (items[size] == null) {
+      items[size] = new RenderCommand();
+    }
+    items[size].set(obj);
+    items[size].depth = getClipDepth(key);
+    items[size].shaderVariant = shaderVariant;
+    keys[size] = key;
+    order[size] = size;
+    size++;
+  }
+  
+  
+  /**
+   * Sorts the queue by the sort keys (LSD radix sort, stable).
+   * Passes in which all keys share the same byte are skipped.
+   */
+  public void sort() {
+    // The keys are moved together with the indices, so the keys array is in sorted order afterwards too
+    for (int shift = 0; shift < Long.SIZE; shift += radixBits) {
+      Arrays.fill(counts, 0);
+      for (int i = 0; i < size; i++) {
+        counts[(int) (keys[i] >>> shift) & (radixSize - 1)]++;
+      }
+      if (size == 0 || counts[(int) (keys[0] >>> shift) & (radixSize - 1)] == size) {
+        continue;
+      }
+  
+      // Convert the histogram into the start positions of each bucket
+      int position = 0;
+      for (int bucket = 0; bucket < radixSize; bucket++) {
+        final int count = counts[bucket];
+        counts[bucket] = position;
+        position += count;
+      }
+  
+      for (int i = 0; i < size; i++) {
+        final int target = counts[(int) (keys[i] >>> shift) & (radixSize - 1)]++;
+        tmpKeys[target] = keys[i];
+        tmpOrder[target] = order[i];
+      }
+  
+      final long[] swapKeys = keys;
+      keys = tmpKeys;
+      tmpKeys = swapKeys;
+      final int[] swapOrder = order;
+      order = tmpOrder;
+      tmpOrder = swapOrder;
+    }
+  }
+  
+  
+  /**
+   * Returns the command at the given position (in sorted order after {@link #sort()})
+   */
+  public RenderCommand get(int index) {
+    return items[order[index]];
+  }
+  
+  
+  /**
+   * Returns the sort key of the object at the given position (in sorted order after {@link #sort()})
+   */
+  public long getKey(int index) {
+    return keys[index];
+  }
+  
+  
+  public int size() {
+    return size;
+  }
+  
+  
+  /**
+   * Returns the position of the first translucent object (in sorted order after {@link #sort()}).
+   * All objects before it are opaque.
+   */
+  public int getTranslucentStart() {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (isTranslucent(keys[middle])) {
+        high = middle;
+      } else {
+        low = middle + 1;
+      }
+    }
+    return low;
+  }
+  
+  
+  /**
+   * Removes all objects from the queue
+   */
+  public void clear() {
+    for (int i = 0; i < size; i++) {
+      items[i].clear();
+    }
+    size = 0;
+  }
+  
+  
+  /**
+   * Doubles the capacity of the queue
+   */
+  private void grow() {
+    final int capacity = items.length * 2;
+    items = Arrays.copyOf(items, capacity);
+    keys = Arrays.copyOf(keys, capacity);
+    order = Arrays.copyOf(order, capacity);
+    tmpKeys = new long[capacity];
+    tmpOrder = new int[capacity];
+  }
+  
+}
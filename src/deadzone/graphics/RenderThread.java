@@ -0,0 +1,142 @@
+package deadzone.graphics;
+
+import deadzone.Profiler;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+
+/**
+ * Thread which owns the OpenGL context and draws the frames built by the game thread.
+ * The frames are pooled: the game thread takes a free frame, fills it and submits it, the render thread
+ * draws it, swaps the buffers and hands the frame back. Since the pool holds only a few frames, the game thread
+ * blocks as soon as it's more than the configured amount of frames ahead, which keeps the latency bounded.
+ */
+public class RenderThread extends Thread {
+  
+  /** Time in milliseconds after which a waiting thread checks if the other thread is still alive */
+  private static final long pollTimeout = 100;
+  
+  /** The renderer which draws the frames */
+  private final Renderer renderer;
+  
+  /** The window whose OpenGL context is used by this thread */
+  private final long windowHandle;
+  
+  /** The OpenGL bindings which were created on the main thread */
+  private final GLCapabilities capabilities;
+  
+  /** Frames which can be built by the game thread */
+  private final BlockingQueue<RenderFrame> freeFrames;
+  
+  /** Frames which were submitted by the game thread and wait to be drawn, in submission order */
+  private final BlockingQueue<RenderFrame> readyFrames = new LinkedBlockingQueue<>();
+  
+  /** False as soon as the thread shall stop after drawing the remaining frames */
+  private volatile boolean running = true;
+  
+  /** The error which stopped the thread, if any */
+  private volatile Throwable error;
+  
+  
+  /**
+   * @param latency Amount of finished frames which may wait for the render thread while it draws an older one
+   */
+  RenderThread(Renderer renderer, long windowHandle, int latency) {
+    super("Render Thread");
+    this.renderer = renderer;
+    this.windowHandle = windowHandle;
+    this.capabilities = GL.getCapabilities();
+    // One frame is drawn, one is built and the others are waiting
+    final int frameCount = Math.max(0, latency) + 2;
+    freeFrames = new ArrayBlockingQueue<>(frameCount);
+    for (int i = 0; i < frameCount; i++) {
+      freeFrames.add(new RenderFrame());
+    }
+  }
+  
+  
+  /**
+   * Releases the OpenGL context from the calling (main) thread and starts drawing
+   */
+  @Override
+  public synchronized void start() {
+    glfwMakeContextCurrent(NULL);
+    super.start();
+  }
+  
+  
+  @Override
+  public void run() {
+    glfwMakeContextCurrent(windowHandle);
+    GL.setCapabilities(capabilities);
+    try {
+      while (running || !readyFrames.isEmpty()) {
+        final RenderFrame frame = readyFrames.poll(pollTimeout, TimeUnit.MILLISECONDS);
+        if (frame == null) {
+          continue;
+        }
+        renderer.renderFrame(frame);
+        Profiler.begin(Profiler.Zone.SWAP_BUFFERS);
+        glfwSwapBuffers(windowHandle);
+        Profiler.end();
+        frame.clear();
+        freeFrames.add(frame);
+      }
+    } catch (Throwable e) {
+      error = e;
+      System.err.println("The render thread stopped unexpectedly.\n" + e.getMessage());
+    } finally {
+      GL.setCapabilities(null);
+      glfwMakeContextCurrent(NULL);
+    }
+  }
+  
+  
+  /**
+   * Returns a frame which can be built by the game thread.
+   * Blocks until the render thread has finished one of the older frames.
+   */
+  RenderFrame obtainFrame() {
+    try {
+      while (true) {
+        final RenderFrame frame = freeFrames.poll(pollTimeout, TimeUnit.MILLISECONDS);
+        if (frame != null) {
+          return frame;
+        }
+        if (!isAlive()) {
+          throw new IllegalStateException("The render thread is not running", error);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the render thread", e);
+    }
+  }
+  
+  
+  /**
+   * Hands a finished frame over to the render thread
+   */
+  void submit(RenderFrame frame) {
+    readyFrames.add(frame);
+  }
+  
+  
+  /**
+   * Draws the remaining frames, stops the thread and makes the OpenGL context current on the calling thread again
+   */
+  public void shutdown() throws InterruptedException {
+    running = false;
+    join();
+    glfwMakeContextCurrent(windowHandle);
+  }
+  
+}
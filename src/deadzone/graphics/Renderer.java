@@ -1,80 +1,556 @@
 package deadzone.graphics;
 
+import deadzone.Profiler;
+import deadzone.Settings;
+import deadzone.Util;
+import deadzone.assets.Texture;
+import deadzone.assets.TextureArray;
+import deadzone.graphics.worldobjects.Tile;
+
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 
 import static org.lwjgl.opengl.GL30.*;
 
 
 public class Renderer {
-  /** Stores the shader program in which is the connector object to all shader programs in the GPU memory */
-  protected ShaderProgram shaderProgram;
+  /** Stores the shader program of each variant, the connector objects to all shader programs in the GPU memory */
+  private final ShaderRegistry shaders = new ShaderRegistry();
+  
+  /** Stores the VAO per vertex format and buffer, which are set up once and bound for drawing */
+  private VertexArrayRegistry vertexArrays;
+  
+  /** The frame which is currently built by the game thread (null until the first object of the frame is registered) */
+  private RenderFrame buildingFrame;
+  
+  /** The only frame, if the render thread is disabled */
+  private RenderFrame singleFrame;
+  
+  /** Draws the frames while the game thread builds the next ones (null if the render thread is disabled or not started) */
+  private RenderThread renderThread;
+  
+  /** The last per-tile data of every grid which was handed to the instanced renderer. Only used by the game thread */
+  final private HashMap<IsoGrid, InstancedTileRenderer.GridInstanceData> preparedGrids = new HashMap<>();
+  
+  /** Iso grids which were registered for instanced rendering in the frame which is currently built */
+  final private HashSet<IsoGrid> registeredGrids = new HashSet<>();
+  
+  /** All VBOs which currently have a buffer in the GPU memory. They stay there until they are not drawn for a whole frame */
+  final private ArrayList<VertexBufferObject> residentVBOs = new ArrayList<>();
+  
+  /** Number of the current render loop, used to detect which resident VBOs were not drawn anymore. Only used by the thread which draws */
+  private int frameNumber = 0;
+  
+  /** Ring buffer for vertex data which is rewritten every frame, like the batches of the sprite batch */
+  private StreamingVertexBuffer vertexStream;
+  
+  /** Merges objects which share texture and projection into single draw calls, if batch rendering is enabled */
+  private SpriteBatch spriteBatch;
+  
+  /** Index buffer which is shared by all quad meshes, so each quad needs only 4 instead of 6 vertices */
+  private QuadIndexBuffer quadIndices;
   
-  /** Stores all VAO with the related mesh type as key which are currently stored in the GPU memory for rendering */
-  final private HashMap<Integer,VertexArrayObject> attachedVAOs = new HashMap<>();
+  /** Draws whole iso grids with instanced rendering (null if not supported by the graphics card) */
+  private InstancedTileRenderer instancedTileRenderer;
   
-  final private ArrayList<IRenderable> registeredRenderableObjects = new ArrayList<>();
+  /** Caches the instanced tiles of each grid in an offscreen framebuffer (null if instanced rendering is not supported or the cache could not be created) */
+  private StaticLayerCache staticLayerCache;
   
-  /** With this info, we know if we need to switch the VAO while rendering */
-  protected int activeDrawType;
+  /** Measures the GPU time of each render pass (null if disabled or not supported by the graphics card) */
+  private GpuProfiler gpuProfiler;
+  
+  /** All textures drawn by the batch or instanced renderer, which hold a reference to the GPU texture until the renderer is disposed */
+  final private HashSet<Texture> referencedTextures = new HashSet<>();
+  
+  /** All array textures drawn by the instanced renderer, which hold a reference to the GPU texture until the renderer is disposed */
+  final private HashSet<TextureArray> referencedTextureArrays = new HashSet<>();
+  
+  /** Provides the view and projection matrices of the current frame to all shader programs */
+  private Camera camera;
+  
+  /** Amount of batches (and therefore draw calls) of the batch and the instanced renderer in the last frame */
+  private volatile int lastFrameBatchCount = 0;
+  
+  /** Amount of objects (including tiles) which were drawn / skipped by viewport culling in the last frame */
+  private volatile int lastFrameDrawnObjects = 0;
+  private volatile int lastFrameCulledObjects = 0;
+  
+  /**
+   * Amount of instanced tiles which were submitted in the last frame. Instanced tiles are culled by whole rows, and a row
+   * is a diagonal on the screen, so most of these tiles may be outside of the viewport and clipped by the GPU.
+   */
+  private volatile int lastFrameSubmittedTiles = 0;
   
   
   public Renderer() {
     init();
   }
   
-  public ShaderProgram getShaderProgram() {
-    return shaderProgram;
+  public ShaderRegistry getShaders() {
+    return shaders;
+  }
+  
+  public Camera getCamera() {
+    return camera;
+  }
+  
+  VertexArrayRegistry getVertexArrays() {
+    return vertexArrays;
   }
   
   public void init() {
-    // Create and bind shader program
-    if (shaderProgram == null) {
+    // Compile the shader programs of all objects up front, so the first frames don't stall
+    try {
+      for (ShaderVariant variant : ShaderVariant.values()) {
+        if (variant != ShaderVariant.INSTANCED_TILE) {
+          shaders.get(variant);
+        }
+      }
+      if (ShaderCache.isEnabled()) {
+        System.out.println("Shader cache: " + ShaderCache.getHitCount() + " hits, " + ShaderCache.getMissCount() + " misses");
+      }
+    } catch (Exception e) {
+      System.err.println("Could not initialize shaders.\n" + e.getMessage());
+    }
+  
+    camera = new Camera();
+    
+    // Prepare VAOs. Quads are drawn indexed as two triangles each, so every VAO gets the shared index buffer attached
+    quadIndices = new QuadIndexBuffer();
+    vertexArrays = new VertexArrayRegistry(quadIndices);
+    
+    vertexStream = new StreamingVertexBuffer(Settings.streamRegionSize, Settings.streamRegionCount);
+    spriteBatch = new SpriteBatch(this, vertexArrays, vertexStream);
+    
+    // Prepare instanced rendering of iso grids, if the graphics card supports it
+    if (InstancedTileRenderer.isSupported()) {
+      try {
+        instancedTileRenderer = new InstancedTileRenderer(this, quadIndices);
+      } catch (Exception e) {
+        System.err.println("Could not initialize instanced tile rendering.\n" + e.getMessage());
+      }
+    }
+    
+    // Cache the static tile layers in textures, otherwise the instanced tiles are drawn every frame
+    if (instancedTileRenderer != null) {
       try {
-        shaderProgram = new ShaderProgram();
-        shaderProgram.initializeBaseShaders();
-        glBindFragDataLocation(shaderProgram.getProgramId(), 0, "outColor");
-        shaderProgram.use();
+        staticLayerCache = new StaticLayerCache(this, instancedTileRenderer, vertexArrays, vertexStream);
       } catch (Exception e) {
-        System.err.println("Could not initialize shaders.\n" + e.getMessage());
+        System.err.println("Could not initialize the static layer cache.\n" + e.getMessage());
       }
     }
+    
+    if (Settings.gpuTimers && GpuProfiler.isSupported()) {
+      gpuProfiler = new GpuProfiler();
+    }
+  }
+  
+  /**
+   * Returns the amount of batches which were flushed (and therefore the amount of draw calls) in the last frame
+   */
+  public int getBatchCount() {
+    return lastFrameBatchCount;
+  }
+  
+  /**
+   * Returns the amount of objects which were drawn in the last frame, including the tiles which are not drawn with instanced rendering
+   */
+  public int getDrawnObjectCount() {
+    return lastFrameDrawnObjects;
+  }
+  
+  /**
+   * Returns the amount of objects (including tiles) which were skipped in the last frame, because they were outside of the viewport
+   */
+  public int getCulledObjectCount() {
+    return lastFrameCulledObjects;
+  }
+  
+  /**
+   * Returns the amount of instanced tiles in the visible rows of the last frame, which were submitted to the GPU
+   */
+  public int getSubmittedTileCount() {
+    return lastFrameSubmittedTiles;
+  }
+  
+  /**
+   * Adds objects to the culling statistics which were skipped by the scene, because they were outside of the viewport
+   */
+  public void countCulledObjects(int count) {
+    getBuildingFrame().culledObjects += count;
+  }
+  
+  /**
+   * Returns the range of grid coordinates of the given grid which is visible with the current camera.
+   * @return Inclusive coordinate range: min x, min y, max x, max y (null if viewport culling is disabled)
+   */
+  public int[] getVisibleRange(IsoGrid grid) {
+    if (!Settings.viewportCulling) {
+      return null;
+    }
+    return grid.getCoordinateRange(camera.getVisibleWorldBounds(), Settings.cullingMargin);
+  }
   
-    // Prepare VAOs
-    attachedVAOs.put(GL_TRIANGLES, new VertexArrayObject(GL_TRIANGLES));
-    attachedVAOs.put(GL_LINES, new VertexArrayObject(GL_LINES));  // TODO: not used yet, implement class LineShape
+  /**
+   * Returns the ring buffer for per-frame vertex data, which also reports how often the CPU had to wait for the GPU
+   */
+  public StreamingVertexBuffer getVertexStream() {
+    return vertexStream;
   }
   
   /**
-   * Called from the render loop.
-   * Iterates through all VAOs, initializes and binds all related VBOs (related by mesh type) to them,
-   * draws the corresponding meshes and finally unbind those VBOs again.
-   * After that, all registered objects will be cleared to prepare for the upcoming game loop.
+   * Returns the GPU time measurements of the render passes (null if timer queries are disabled or not supported)
+   */
+  public GpuProfiler getGpuProfiler() {
+    return gpuProfiler;
+  }
+  
+  /**
+   * Starts the render thread, which owns the OpenGL context from now on.
+   * Must be called from the main thread after the renderer and the initial scene were set up.
+   */
+  public void startRenderThread(long windowHandle) {
+    renderThread = new RenderThread(this, windowHandle, Settings.renderLatency);
+    renderThread.start();
+  }
+  
+  
+  /**
+   * Draws the remaining frames and stops the render thread, so the OpenGL context is current on the calling thread again
+   */
+  public void stopRenderThread() throws InterruptedException {
+    if (renderThread != null) {
+      renderThread.shutdown();
+      renderThread = null;
+    }
+  }
+  
+  
+  /**
+   * Called from the game loop after all objects of the frame were registered.
+   * Finishes the frame which was built since the last call and hands it over to the render thread,
+   * or draws it directly if the render thread is disabled.
    */
   public void renderRegisteredObjects() {
+    final RenderFrame frame = getBuildingFrame();
+    buildingFrame = null;
     
-    // Draw all registered vertices
-    for ( IRenderable obj : registeredRenderableObjects ) {
-      // Do we need to bind another VAO for the current obj/vbo?
-      final int currentDrawType = obj.getGL_TYPE();
-      if (currentDrawType != activeDrawType) {
-        attachedVAOs.get(currentDrawType).bind();
-        activeDrawType = currentDrawType;
+    // Sort the objects on the game thread to minimize the state changes between them
+    Profiler.begin(Profiler.Zone.SORT_QUEUE);
+    frame.renderQueue.sort();
+    Profiler.end();
+    camera.update();
+    frame.isoViewProjection = camera.getIsoViewProjection();
+    frame.windowWidth = camera.getWindowWidth();
+    frame.windowHeight = camera.getWindowHeight();
+    
+    // The instanced renderer drops the grids which were not drawn, so their data has to be prepared again
+    preparedGrids.keySet().retainAll(registeredGrids);
+    registeredGrids.clear();
+    
+    if (renderThread != null) {
+      renderThread.submit(frame);
+    } else {
+      renderFrame(frame);
+      frame.clear();
+    }
+  }
+  
+  
+  /**
+   * Draws a finished frame. Called by the thread which owns the OpenGL context.
+   * The frame is drawn in three passes: first the opaque objects from front to back with depth writes and without
+   * blending, so hidden fragments are rejected by the depth test. Then the tiles, which lie on the far plane and
+   * are only drawn where no opaque object covers them. Finally the translucent objects from back to front, blended
+   * over everything behind them.
+   * VBOs stay resident in the GPU memory, so only new or modified vertex data is uploaded. VBOs which were not drawn
+   * in this frame are removed from the GPU afterwards.
+   */
+  void renderFrame(RenderFrame frame) {
+    Profiler.begin(Profiler.Zone.RENDER_FRAME);
+    frameNumber++;
+    if (gpuProfiler != null) {
+      gpuProfiler.beginFrame();
+    }
+    
+    // Clear framebuffer to prepare the upcoming render loop (the depth buffer is only cleared while it's writable)
+    beginGpuPass(GpuProfiler.Pass.CLEAR);
+    GLStateCache.setViewport(0, 0, frame.windowWidth, frame.windowHeight);
+    GLStateCache.setDepthMask(true);
+    glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+    
+    // Upload the matrices once for the whole frame (only if the window or camera was changed)
+    camera.upload(frame.isoViewProjection);
+    
+    int drawnObjects = frame.drawnObjects;
+    int culledObjects = frame.culledObjects;
+    int submittedTiles = 0;
+    int batchCount = 0;
+    final RenderQueue renderQueue = frame.renderQueue;
+    final int translucentStart = renderQueue.getTranslucentStart();
+    
+    // Opaque pass
+    Profiler.begin(Profiler.Zone.OPAQUE_PASS);
+    beginGpuPass(GpuProfiler.Pass.OPAQUE);
+    GLStateCache.setCapability(GL_DEPTH_TEST, true);
+    GLStateCache.setCapability(GL_BLEND, false);
+    batchCount += renderCommands(renderQueue, 0, translucentStart);
+    Profiler.end();
+    
+    // Tiles have the lowest z index, so they are behind all objects. Their textures are blended, so they don't write the depth
+    Profiler.begin(Profiler.Zone.TILE_PASS);
+    beginGpuPass(GpuProfiler.Pass.TILES);
+    GLStateCache.setDepthMask(false);
+    GLStateCache.setCapability(GL_BLEND, true);
+    if (instancedTileRenderer != null) {
+      final boolean staticLayers = staticLayerCache != null && Settings.staticLayers;
+      instancedTileRenderer.begin();
+      if (staticLayerCache != null) {
+        staticLayerCache.begin();
       }
-      
-      // Draw all vertices of the current VBO, then pop it from stack
-      final VertexBufferObject vbo = obj.getVBO();
-      vbo.initialize();
-      glDrawArrays(activeDrawType, 0, obj.getVertexCount());
-      vbo.delete();
+      for ( RenderFrame.GridEntry entry : frame.grids ) {
+        final int tiles;
+        if (staticLayers) {
+          tiles = staticLayerCache.render(
+            entry.grid, entry.data, entry.patch, entry.tileSize, frame.isoViewProjection, frame.windowWidth, frame.windowHeight, frameNumber
+          );
+          batchCount++;
+        } else {
+          tiles = instancedTileRenderer.render(entry.grid, entry.data, entry.patch, entry.tileSize, entry.visibleRange, frameNumber);
+        }
+        submittedTiles += tiles;
+        culledObjects += entry.tileCount - tiles;
+      }
+      instancedTileRenderer.evictUnusedGrids(frameNumber);
+      if (staticLayerCache != null) {
+        staticLayerCache.evictUnusedLayers(frameNumber);
+      }
+      batchCount += instancedTileRenderer.getDrawCount();
     }
+    Profiler.end();
     
-    registeredRenderableObjects.clear();
+    // Translucent pass
+    Profiler.begin(Profiler.Zone.TRANSLUCENT_PASS);
+    beginGpuPass(GpuProfiler.Pass.TRANSLUCENT);
+    batchCount += renderCommands(renderQueue, translucentStart, renderQueue.size());
+    Profiler.end();
+    if (gpuProfiler != null) {
+      gpuProfiler.end();
+    }
+    
+    evictUnusedVBOs();
+    vertexStream.endFrame();
+    lastFrameBatchCount = batchCount;
+    lastFrameDrawnObjects = drawnObjects;
+    lastFrameCulledObjects = culledObjects;
+    lastFrameSubmittedTiles = submittedTiles;
+    GLStateCache.endFrame();
+    Profiler.end();
+  }
+  
+  
+  /**
+   * Starts measuring the GPU time of the given pass, which ends the previous one
+   */
+  private void beginGpuPass(GpuProfiler.Pass pass) {
+    if (gpuProfiler != null) {
+      gpuProfiler.begin(pass);
+    }
+  }
+  
+  
+  /**
+   * Returns the frame which is currently built. If the render thread is enabled and the frame was just started,
+   * this blocks until the render thread has finished an older frame.
+   */
+  private RenderFrame getBuildingFrame() {
+    if (buildingFrame == null) {
+      if (renderThread != null) {
+        Profiler.begin(Profiler.Zone.WAIT_FOR_FRAME);
+        buildingFrame = renderThread.obtainFrame();
+        Profiler.end();
+      } else {
+        if (singleFrame == null) {
+          singleFrame = new RenderFrame();
+        }
+        buildingFrame = singleFrame;
+      }
+    }
+    return buildingFrame;
+  }
+  
+  
+  /**
+   * Draws the given range of the sorted render queue
+   * @param from Position of the first object to draw
+   * @param to Position behind the last object to draw
+   * @return The amount of batches which were drawn (0 if the objects were drawn one by one)
+   */
+  private int renderCommands(RenderQueue renderQueue, int from, int to) {
+    // The retained path uploads from the VBOs of the objects, which may only be read while the game thread waits
+    if (Settings.batchRendering || renderThread != null) {
+      return renderBatched(renderQueue, from, to);
+    }
+    renderRetained(renderQueue, from, to);
+    return 0;
+  }
+  
+  
+  /**
+   * Draws the given range of objects through the sprite batch, so consecutive objects with the same
+   * texture and projection are merged into a single draw call.
+   */
+  private int renderBatched(RenderQueue renderQueue, int from, int to) {
+    spriteBatch.begin();
+    for (int i = from; i < to; i++) {
+      spriteBatch.add(renderQueue.get(i));
+    }
+    spriteBatch.end();
+    return spriteBatch.getFlushCount();
+  }
+  
+  
+  /**
+   * Draws the given range of objects one by one from their own resident VBOs
+   */
+  private void renderRetained(RenderQueue renderQueue, int from, int to) {
+    // Draw all registered vertices
+    for (int i = from; i < to; i++) {
+      final RenderCommand command = renderQueue.get(i);
+      
+      // Draw all vertices of the current VBO with its own VAO (uploads it first, if it's new or was modified)
+      final VertexBufferObject vbo = command.vbo;
+      if (!vbo.isInitialized()) {
+        residentVBOs.add(vbo);
+      }
+      shaders.use(command.shaderVariant);
+      vbo.bind(command);
+      vbo.lastUsedFrame = frameNumber;
+      VertexBufferObject.setDepth(command.depth);
+      vbo.draw(command.drawType, command.vertexCount);
+    }
+  }
+  
+  
+  /**
+   * Removes all VBOs from the GPU memory which were not drawn in the current frame,
+   * because their objects were removed from the scene.
+   */
+  private void evictUnusedVBOs() {
+    residentVBOs.removeIf(vbo -> {
+      if (vbo.lastUsedFrame != frameNumber) {
+        vbo.delete();
+        return true;
+      }
+      return false;
+    });
   }
   
   
   public void registerObject(IRenderable obj) {
-    registeredRenderableObjects.add(obj);
+    final RenderFrame frame = getBuildingFrame();
+    final VertexBufferObject vbo = obj.getVBO();
+    final boolean translucent = isTranslucent(vbo);
+    final ShaderVariant shaderVariant = ShaderVariant.select(vbo.getTexture(), translucent);
+    frame.renderQueue.submit(obj, createSortKey(obj, translucent, shaderVariant, frame.renderQueue.size()), shaderVariant);
+    frame.drawnObjects++;
+  }
+  
+  
+  /**
+   * Registers all tiles of the given grid for rendering.
+   * If supported, the whole grid is drawn with instanced rendering, otherwise each visible tile is registered as a single object.
+   */
+  public void registerGrid(IsoGrid grid) {
+    // Tiles which only changed their appearance are updated one by one, the tiles of the non-instanced path update their VBOs themselves
+    final List<Tile> changedTiles = grid.takeChangedTiles();
+    if (instancedTileRenderer != null && Settings.instancedTiles) {
+      // The per-tile data is only prepared (on the game thread) if the grid was changed since it was submitted the last time
+      InstancedTileRenderer.GridInstanceData data = null;
+      InstancedTileRenderer.GridInstancePatch patch = null;
+      final InstancedTileRenderer.GridInstanceData prepared = preparedGrids.get(grid);
+      if (prepared != null && prepared.revision == grid.getRevision() && !changedTiles.isEmpty()) {
+        Profiler.begin(Profiler.Zone.PREPARE_GRID);
+        patch = InstancedTileRenderer.preparePatch(prepared, changedTiles);
+        Profiler.end();
+      }
+      // Tiles which moved to another texture group change the order of the instances, so the whole grid is prepared again
+      if (prepared == null || prepared.revision != grid.getRevision() || (!changedTiles.isEmpty() && patch == null)) {
+        Profiler.begin(Profiler.Zone.PREPARE_GRID);
+        data = InstancedTileRenderer.prepare(grid);
+        Profiler.end();
+        preparedGrids.put(grid, data);
+      }
+      final float[] tileSize = { Util.normalizePixelWidth(grid.getTileWidth()), Util.normalizePixelHeight(grid.getTileHeight()) };
+      registeredGrids.add(grid);
+      getBuildingFrame().grids.add(new RenderFrame.GridEntry(grid, data, patch, tileSize, getVisibleRange(grid), grid.getTiles().size()));
+      return;
+    }
+    final int[] visibleRange = getVisibleRange(grid);
+    if (visibleRange == null) {
+      grid.getTiles().forEach(this::registerObject);
+    } else {
+      final int visibleTiles = grid.forEachTileInRange(visibleRange, this::registerObject);
+      countCulledObjects(grid.getTiles().size() - visibleTiles);
+    }
+  }
+  
+  
+  /**
+   * Creates the render queue sort key for the given object.
+   * UI elements keep the order in which they were registered, world objects are ordered by their grid position.
+   */
+  private long createSortKey(IRenderable obj, boolean translucent, ShaderVariant shaderVariant, int sequence) {
+    final VertexBufferObject vbo = obj.getVBO();
+    final int layer = vbo.isIso() ? RenderQueue.LAYER_WORLD : RenderQueue.LAYER_UI;
+    int depth = sequence;
+    if (obj instanceof IIsoObject) {
+      // Objects with a higher grid position are farther away, so they are drawn first
+      final IIsoObject isoObj = (IIsoObject) obj;
+      depth = -(isoObj.getXCoordinate() + isoObj.getYCoordinate());
+    }
+    return RenderQueue.createKey(
+      layer,
+      translucent,
+      shaderVariant.ordinal(),
+      obj.getGL_TYPE(),
+      vbo.getTexture().getSortId(),
+      depth
+    );
+  }
+  
+  
+  /**
+   * Returns true, if the given VBO must be blended with the objects behind it, because either its texture or its
+   * vertex color is partially transparent. Cut-out textures are drawn in the opaque pass with the alpha tested variant.
+   */
+  private static boolean isTranslucent(VertexBufferObject vbo) {
+    final Texture texture = vbo.getTexture();
+    return vbo.hasTranslucentVertices() || texture.hasTranslucency() || texture.isAlphaMask();
+  }
+  
+  
+  /**
+   * Returns the GPU handle of the given texture. Adds a reference of the renderer to the texture, if it was never drawn before.
+   */
+  int getTextureHandle(Texture texture) {
+    if (referencedTextures.add(texture)) {
+      return texture.acquire();
+    }
+    return texture.getHandle();
+  }
+  
+  
+  /**
+   * Returns the GPU handle of the given array texture. Adds a reference of the renderer to the array, if it was never drawn before.
+   */
+  int getTextureArrayHandle(TextureArray textureArray) {
+    if (referencedTextureArrays.add(textureArray)) {
+      return textureArray.acquire();
+    }
+    return textureArray.getHandle();
   }
   
   
@@ -82,21 +558,32 @@ public class Renderer {
    * Free up all resources from GPU memory
    */
   public void dispose() {
+    // Delete VBOs
+    residentVBOs.forEach(VertexBufferObject::delete);
+    residentVBOs.clear();
+    spriteBatch.dispose();
+    vertexStream.dispose();
+    if (instancedTileRenderer != null) {
+      instancedTileRenderer.dispose();
+    }
+    if (staticLayerCache != null) {
+      staticLayerCache.dispose();
+    }
+    referencedTextures.forEach(Texture::release);
+    referencedTextures.clear();
+    referencedTextureArrays.forEach(TextureArray::release);
+    referencedTextureArrays.clear();
+    
     // Delete VAOs
-    attachedVAOs.forEach((type, vao) -> vao.delete());
-    attachedVAOs.clear();
+    vertexArrays.dispose();
+    quadIndices.delete();
+    camera.dispose();
+    if (gpuProfiler != null) {
+      gpuProfiler.dispose();
+    }
     
     // Delete shaders
-    int vertexShader = shaderProgram.getVertexShaderId();
-    int fragmentShader = shaderProgram.getFragmentShaderId();
-
-    if (vertexShader != 0) {
-      glDeleteShader(vertexShader);
-    }
-    if (fragmentShader != 0) {
-      glDeleteShader(fragmentShader);
-    }
-    this.shaderProgram.cleanup();
+    shaders.dispose();
   }
   
 }
\ No newline at end of file
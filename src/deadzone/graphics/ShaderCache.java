@@ -0,0 +1,163 @@
+package deadzone.graphics;
+
+import deadzone.Settings;
+import deadzone.Util;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.util.xxhash.XXHash;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.lwjgl.opengl.ARBGetProgramBinary.*;
+import static org.lwjgl.opengl.GL20.*;
+
+
+/**
+ * Stores linked shader programs in the binary format of the driver in the cache directory (ARB_get_program_binary),
+ * so they don't need to be compiled again on the next start.
+ * Each file is named by a hash of the shader sources and the driver, so changed shaders or another driver never
+ * get an old binary. If the driver rejects a binary anyway (e.g. after an update with the same version string),
+ * the program is compiled from source and the file is replaced.
+ */
+public class ShaderCache {
+  
+  /** Increased whenever the way the programs are linked changes, so the binaries of older versions are ignored */
+  private static final int cacheVersion = 1;
+  
+  /** True, if the driver can return program binaries (null as long as it wasn't checked) */
+  private static Boolean supported;
+  
+  /** Vendor, renderer and version of the driver, which are part of the hash */
+  private static String driver;
+  
+  /** Amount of programs which were loaded from / not found in the cache since the start */
+  private static int hitCount = 0;
+  private static int missCount = 0;
+  
+  
+  /**
+   * Returns true, if the cache is enabled in the settings and supported by the driver
+   */
+  static boolean isEnabled() {
+    if (!Settings.shaderCache) {
+      return false;
+    }
+    if (supported == null) {
+      final GLCapabilities caps = GL.getCapabilities();
+      supported = (caps.OpenGL41 || caps.GL_ARB_get_program_binary) && glGetInteger(GL_NUM_PROGRAM_BINARY_FORMATS) > 0;
+      driver = glGetString(GL_VENDOR) + "|" + glGetString(GL_RENDERER) + "|" + glGetString(GL_VERSION);
+    }
+    return supported;
+  }
+  
+  
+  /**
+   * Returns the key of the program with the given shader sources on the current driver
+   */
+  static long createKey(String vertexShaderCode, String fragmentShaderCode) {
+    final byte[] content = (cacheVersion + "\0" + driver + "\0" + vertexShaderCode + "\0" + fragmentShaderCode)
+      .getBytes(StandardCharsets.UTF_8);
+    final ByteBuffer buffer = MemoryUtil.memAlloc(content.length);
+    buffer.put(content).flip();
+    final long hash = XXHash.XXH64(buffer, 0);
+    MemoryUtil.memFree(buffer);
+    return hash;
+  }
+  
+  
+  /**
+   * Links the given program from the cached binary
+   * @return True, if the binary was found and accepted by the driver, otherwise the program must be compiled from source
+   */
+  static boolean load(int programId, long key) {
+    final Path file = getFile(key);
+    if (!Files.isRegularFile(file)) {
+      missCount++;
+      return false;
+    }
+    try {
+      // The file starts with the binary format, followed by the binary
+      final byte[] content = Files.readAllBytes(file);
+      if (content.length > Integer.BYTES) {
+        final ByteBuffer binary = MemoryUtil.memAlloc(content.length - Integer.BYTES);
+        binary.put(content, Integer.BYTES, binary.remaining()).flip();
+        glProgramBinary(programId, ByteBuffer.wrap(content).getInt(), binary);
+        MemoryUtil.memFree(binary);
+        if (glGetProgrami(programId, GL_LINK_STATUS) != 0) {
+          hitCount++;
+          return true;
+        }
+      }
+    } catch (IOException e) {
+      System.err.println("Could not read the shader cache file \"" + file + "\".\n" + e.getMessage());
+    }
+    missCount++;
+    return false;
+  }
+  
+  
+  /**
+   * Must be called before the program is linked, so the driver keeps its binary
+   */
+  static void prepare(int programId) {
+    glProgramParameteri(programId, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
+  }
+  
+  
+  /**
+   * Writes the binary of the given linked program into the cache
+   */
+  static void store(int programId, long key) {
+    final int length = glGetProgrami(programId, GL_PROGRAM_BINARY_LENGTH);
+    if (length <= 0) {
+      return;
+    }
+    final Path file = getFile(key);
+    final ByteBuffer binary = MemoryUtil.memAlloc(length);
+    try (MemoryStack stack = MemoryStack.stackPush()) {
+      final IntBuffer writtenLength = stack.mallocInt(1);
+      final IntBuffer format = stack.mallocInt(1);
+      glGetProgramBinary(programId, writtenLength, format, binary);
+      final byte[] content = new byte[Integer.BYTES + writtenLength.get(0)];
+      final ByteBuffer contentBuffer = ByteBuffer.wrap(content).putInt(format.get(0));
+      binary.limit(writtenLength.get(0));
+      contentBuffer.put(binary);
+      Files.createDirectories(file.getParent());
+      Files.write(file, content);
+    } catch (IOException e) {
+      System.err.println("Could not write the shader cache file \"" + file + "\".\n" + e.getMessage());
+    } finally {
+      MemoryUtil.memFree(binary);
+    }
+  }
+  
+  
+  /**
+   * Returns the amount of programs which were loaded from the cache since the start
+   */
+  public static int getHitCount() {
+    return hitCount;
+  }
+  
+  
+  /**
+   * Returns the amount of programs which had to be compiled from source since the start, although the cache is enabled
+   */
+  public static int getMissCount() {
+    return missCount;
+  }
+  
+  
+  private static Path getFile(long key) {
+    return Paths.get(Util.getCacheDir(), "shaders", String.format("%016x.bin", key));
+  }
+  
+}
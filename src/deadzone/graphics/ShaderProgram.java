@@ -3,7 +3,9 @@ package deadzone.graphics;
 import deadzone.Deadzone;
 import deadzone.Util;
 
-import static org.lwjgl.opengl.GL20.*;
+import java.util.HashMap;
+
+import static org.lwjgl.opengl.GL31.*;
 
 
 /**
@@ -18,6 +20,12 @@ public class ShaderProgram {
   
   private int fragmentShaderId;
   
+  /** Cached locations of all vertex attributes which were requested so far */
+  private final HashMap<String, Integer> attributeLocations = new HashMap<>();
+  
+  /** Cached locations of all uniform variables which were requested so far */
+  private final HashMap<String, Integer> uniformLocations = new HashMap<>();
+  
   
   
   /**
@@ -54,12 +62,51 @@ public class ShaderProgram {
   
   
   
+  /**
+   * Returns the location of the given vertex attribute (or -1 if the shaders don't use it).
+   * The location is only requested from OpenGL on the first call.
+   */
+  public int getAttribLocation(String name) {
+    Integer location = attributeLocations.get(name);
+    if (location == null) {
+      location = glGetAttribLocation(programId, name);
+      attributeLocations.put(name, location);
+    }
+    return location;
+  }
+  
+  /**
+   * Returns the location of the given uniform variable (or -1 if the shaders don't use it).
+   * The location is only requested from OpenGL on the first call.
+   */
+  public int getUniformLocation(String name) {
+    Integer location = uniformLocations.get(name);
+    if (location == null) {
+      location = glGetUniformLocation(programId, name);
+      uniformLocations.put(name, location);
+    }
+    return location;
+  }
+  
+  /**
+   * Connects the given uniform block of the shaders to a uniform buffer binding point.
+   * Does nothing if the shaders don't use the block.
+   */
+  public void bindUniformBlock(String name, int bindingPoint) {
+    final int blockIndex = glGetUniformBlockIndex(programId, name);
+    if (blockIndex != GL_INVALID_INDEX) {
+      glUniformBlockBinding(programId, blockIndex, bindingPoint);
+    }
+  }
+  
+  
+  
   /**
    * Activates this program for rendering
    * by adding it to the rendering pipeline
    */
   public void use() {
-    glUseProgram(programId);
+    GLStateCache.useProgram(programId);
   }
   
   /**
@@ -67,7 +114,7 @@ public class ShaderProgram {
    * by removing it from the rendering pipeline
    */
   public void stopUse() {
-    glUseProgram(0);
+    GLStateCache.useProgram(0);
   }
   
   /**
@@ -77,7 +124,7 @@ public class ShaderProgram {
   public void cleanup() {
     stopUse();
     if (programId != 0) {
-      glDeleteProgram(programId);
+      GLStateCache.deleteProgram(programId);
     }
   }
   
@@ -85,7 +132,12 @@ public class ShaderProgram {
    * Moves all compiled shaders from RAM to GPU
    */
   public void link() throws Exception {
-    // Compile and attach shader to the GPU
+    // Compile and attach shader to the GPU (locations might change by linking, so forget the cached ones)
+    attributeLocations.clear();
+    uniformLocations.clear();
+    // All programs share the locations of the inputs which are fed by vertex formats, so their VAOs work with any program
+    VertexFormat.bindAttributeLocations(programId);
+    glBindFragDataLocation(programId, 0, "outColor");
     glLinkProgram(programId);
     if (glGetProgrami(programId, GL_LINK_STATUS) == 0) {
       throw new Exception("Error linking Shader code: " + glGetProgramInfoLog(programId, 1024));
@@ -111,15 +163,62 @@ public class ShaderProgram {
    * Set up the vertex and fragment shader
    */
   public void initializeBaseShaders() throws Exception {
+    initializeShaders("default.vert", "default.frag");
+  }
+  
+  
+  /**
+   * Set up the given vertex and fragment shader
+   * @param vertexShaderFile File name of the vertex shader, relative to the shaders directory
+   * @param fragmentShaderFile File name of the fragment shader, relative to the shaders directory
+   * @param defines Names which are defined at the start of both shaders, to compile a variant of them
+   */
+  public void initializeShaders(String vertexShaderFile, String fragmentShaderFile, String... defines) throws Exception {
     String shadersDir = Util.getShadersDir();
+    String vertexShaderCode = insertDefines(Util.readFullFile(shadersDir + vertexShaderFile), defines);
+    String fragmentShaderCode = insertDefines(Util.readFullFile(shadersDir + fragmentShaderFile), defines);
+    
+    // Use the program binary of the last start, if the sources and the driver didn't change
+    final boolean useCache = ShaderCache.isEnabled();
+    long cacheKey = 0;
+    if (useCache) {
+      cacheKey = ShaderCache.createKey(vertexShaderCode, fragmentShaderCode);
+      if (ShaderCache.load(programId, cacheKey)) {
+        return;
+      }
+      ShaderCache.prepare(programId);
+    }
     
-    String vertexShaderCode = Util.readFullFile(shadersDir + "default.vert");
     vertexShaderId = compileShader(vertexShaderCode, GL_VERTEX_SHADER);
-  
-    String fragmentShaderCode = Util.readFullFile(shadersDir + "default.frag");
     fragmentShaderId = compileShader(fragmentShaderCode, GL_FRAGMENT_SHADER);
-    
     link();
+    
+    if (useCache) {
+      ShaderCache.store(programId, cacheKey);
+    }
+  }
+  
+  
+  /**
+   * Adds a define directive for each of the given names behind the version directive, which must stay the first statement
+   */
+  private static String insertDefines(String shaderCode, String[] defines) {
+    if (defines.length == 0) {
+      return shaderCode;
+    }
+    final StringBuilder directives = new StringBuilder();
+    for (String define : defines) {
+      directives.append("\n#define ").append(define);
+    }
+    final int versionStart = shaderCode.indexOf("#version");
+    int insertAt = versionStart == -1 ? -1 : shaderCode.indexOf('\n', versionStart);
+    if (insertAt == -1) {
+      insertAt = versionStart == -1 ? 0 : shaderCode.length();
+    }
+    if (insertAt == 0) {
+      directives.deleteCharAt(0).append('\n');
+    }
+    return shaderCode.substring(0, insertAt) + directives + shaderCode.substring(insertAt);
   }
   
 
@@ -0,0 +1,78 @@
+package deadzone.graphics;
+
+import java.util.EnumMap;
+
+import static org.lwjgl.opengl.GL20.*;
+
+
+/**
+ * Compiles and keeps one shader program per variant. Programs are compiled on first use.
+ * All programs share the vertex input locations, the output location, the camera block and the texture units,
+ * so switching between them only requires binding another program.
+ */
+public class ShaderRegistry {
+  
+  /** Texture unit of the 2D texture of all programs */
+  public static final int textureUnit = 0;
+  
+  /** Texture unit of the array texture of all programs */
+  public static final int textureArrayUnit = 1;
+  
+  /** The compiled programs */
+  private final EnumMap<ShaderVariant, ShaderProgram> programs = new EnumMap<>(ShaderVariant.class);
+  
+  
+  /**
+   * Returns the program of the given variant and compiles it, if it's requested for the first time
+   */
+  public ShaderProgram get(ShaderVariant variant) {
+    ShaderProgram program = programs.get(variant);
+    if (program == null) {
+      try {
+        program = compile(variant);
+      } catch (Exception e) {
+        throw new RuntimeException("Could not compile shader variant " + variant + ".\n" + e.getMessage(), e);
+      }
+      programs.put(variant, program);
+    }
+    return program;
+  }
+  
+  
+  /**
+   * Activates the program of the given variant for rendering
+   */
+  public void use(ShaderVariant variant) {
+    get(variant).use();
+  }
+  
+  
+  /**
+   * Removes all programs and their shaders from the GPU memory
+   */
+  public void dispose() {
+    for (ShaderProgram program : programs.values()) {
+      if (program.getVertexShaderId() != 0) {
+        glDeleteShader(program.getVertexShaderId());
+      }
+      if (program.getFragmentShaderId() != 0) {
+        glDeleteShader(program.getFragmentShaderId());
+      }
+      program.cleanup();
+    }
+    programs.clear();
+  }
+  
+  
+  private static ShaderProgram compile(ShaderVariant variant) throws Exception {
+    final ShaderProgram program = new ShaderProgram();
+    program.initializeShaders(variant.vertexShaderFile, variant.fragmentShaderFile, variant.defines);
+    program.bindUniformBlock("Camera", Camera.bindingPoint);
+    // The samplers never change, uniforms which are not used by the variant are ignored
+    program.use();
+    glUniform1i(program.getUniformLocation("textureData"), textureUnit);
+    glUniform1i(program.getUniformLocation("textureArray"), textureArrayUnit);
+    return program;
+  }
+  
+}
@@ -0,0 +1,64 @@
+package deadzone.graphics;
+
+import deadzone.assets.Texture;
+
+
+/**
+ * The specialised shader programs, which are compiled from the same sources with different defines.
+ * Every object is drawn with the cheapest variant which produces the same result as the full textured one.
+ */
+public enum ShaderVariant {
+  
+  /** Only the vertex color, for shapes with the plain white texture (which doesn't need to be bound) */
+  UNTEXTURED("default.vert", "default.frag"),
+  /** Vertex color multiplied with the texture color */
+  TEXTURED("default.vert", "default.frag", "TEXTURED"),
+  /** Like textured, but discards transparent pixels, so cut-out textures can be drawn in the opaque pass */
+  ALPHA_TESTED("default.vert", "default.frag", "TEXTURED", "ALPHA_TEST"),
+  /** Vertex color with the alpha channel of a glyph atlas as coverage */
+  TEXT("default.vert", "default.frag", "TEXTURED", "TEXT"),
+  /** Tiles of iso grids, drawn by the instanced tile renderer */
+  INSTANCED_TILE("tile_instanced.vert", "tile_instanced.frag");
+  
+  
+  /** File names of the shaders, relative to the shaders directory */
+  final String vertexShaderFile;
+  final String fragmentShaderFile;
+  
+  /** Names which are defined at the start of both shaders */
+  final String[] defines;
+  
+  
+  ShaderVariant(String vertexShaderFile, String fragmentShaderFile, String... defines) {
+    this.vertexShaderFile = vertexShaderFile;
+    this.fragmentShaderFile = fragmentShaderFile;
+    this.defines = defines;
+  }
+  
+  
+  /**
+   * Returns true, if the variant samples the texture of the drawn objects
+   */
+  public boolean isTextured() {
+    return this != UNTEXTURED;
+  }
+  
+  
+  /**
+   * Returns the cheapest variant for an object with the given texture
+   * @param translucent If true, the object is blended in the translucent pass, so transparent pixels don't need to be discarded
+   */
+  public static ShaderVariant select(Texture texture, boolean translucent) {
+    if (texture.isPlainWhite()) {
+      return UNTEXTURED;
+    }
+    if (texture.isAlphaMask()) {
+      return TEXT;
+    }
+    if (!translucent && texture.hasTransparency()) {
+      return ALPHA_TESTED;
+    }
+    return TEXTURED;
+  }
+  
+}
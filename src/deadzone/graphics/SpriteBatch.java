@@ -0,0 +1,257 @@
+package deadzone.graphics;
+
+import deadzone.Profiler;
+import deadzone.Settings;
+import deadzone.assets.Texture;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+
+/**
+ * Collects the vertex data of consecutive renderable objects which share the same texture and projection
+ * into one large dynamic vertex buffer, so they can be drawn with a single draw call.
+ * A new batch is started whenever an object with another texture or projection is added. This way the count
+ * of draw calls scales with the count of texture switches instead of the count of objects.
+ * The clip space depth of the objects is written per vertex, so objects of different depths can share a batch.
+ * The batches of a frame are laid out first and written at once into a streaming ring buffer, so the GPU can still
+ * read the batches of previous frames while the current one is written. Since the position of every object in the
+ * buffer is known before anything is written, large frames are split into partitions which are copied in parallel
+ * into disjoint slices of the mapped buffer, while the draw order stays the order in which the objects were added.
+ */
+public class SpriteBatch {
+  
+  /** Amount of floats per vertex of the source vertex data: x, y, r, g, b, a, u, v */
+  private static final int floatsPerVertex = VertexFormat.sourceFloatsPerVertex;
+  
+  /**
+   * Render state and vertex range of a single batch
+   */
+  private static class Batch {
+    /** The texture (or atlas page) which is shared by all objects of the batch */
+    Texture texture;
+    /** The projection which is shared by all objects of the batch */
+    boolean isIso;
+    /** The OpenGL draw type (like GL_TRIANGLES) which is used to draw the batch */
+    int drawType;
+    /** The shader program variant which is used to draw the batch */
+    ShaderVariant shaderVariant;
+    /** Index of the first vertex of the batch within the frame */
+    int firstVertex;
+    /** Amount of vertices of the batch */
+    int vertexCount;
+  }
+  
+  /** The renderer which owns this batch and provides the GPU handles of the textures */
+  private final Renderer renderer;
+  
+  /** Provides the VAO which reads the vertices in the current format from the ring buffer */
+  private final VertexArrayRegistry vertexArrays;
+  
+  /** Ring buffer in the GPU memory the batches are written into */
+  private final StreamingVertexBuffer stream;
+  
+  /** The commands which were added since the last call of {@link #begin()} */
+  private RenderCommand[] commands = new RenderCommand[1024];
+  
+  /** Index of the first vertex of each added command within the frame */
+  private int[] commandOffsets = new int[1024];
+  
+  /** Amount of added commands */
+  private int commandCount = 0;
+  
+  /** The batches of the current frame (pooled, so the list also contains unused batches) */
+  private final ArrayList<Batch> batches = new ArrayList<>();
+  
+  /** Amount of batches of the current frame */
+  private int batchCount = 0;
+  
+  /** Amount of vertices of all batches of the current frame */
+  private int vertexCount = 0;
+  
+  /** Amount of draw calls which were issued since the last call of {@link #begin()} */
+  private int flushCount = 0;
+  
+  /** Layout of the vertices in the ring buffer in the current frame */
+  private VertexFormat format;
+  
+  /** Amount of partitions the vertices of the last frame were copied in */
+  private int partitionCount = 0;
+  
+  
+  public SpriteBatch(Renderer renderer, VertexArrayRegistry vertexArrays, StreamingVertexBuffer stream) {
+    this.renderer = renderer;
+    this.vertexArrays = vertexArrays;
+    this.stream = stream;
+  }
+  
+  
+  /**
+   * Prepares the batch for a new frame
+   */
+  public void begin() {
+    commandCount = 0;
+    batchCount = 0;
+    vertexCount = 0;
+    flushCount = 0;
+  }
+  
+  
+  /**
+   * Appends the given render command to the current batch.
+   * If the command can't be merged with the current batch, a new batch is started.
+   * Only the position of the vertices is determined here, they are copied with {@link #end()}.
+   */
+  public void add(RenderCommand command) {
+    final int count = Math.min(command.vertexCount, command.vertexData.length / floatsPerVertex);
+    if (count == 0) {
+      return;
+    }
+    // Untextured objects don't bind a texture, so they can be merged regardless of it
+    final Texture texture = command.shaderVariant.isTextured() ? command.texture.getBoundTexture() : null;
+  
+    // Start a new batch if the object uses another render state (including the draw type) than the current batch
+    Batch batch = batchCount > 0 ? batches.get(batchCount - 1) : null;
+    if (batch == null || texture != batch.texture || command.isIso != batch.isIso || command.drawType != batch.drawType
+      || command.shaderVariant != batch.shaderVariant) {
+      if (batchCount == batches.size()) {
+        batches.add(new Batch());
+      }
+      batch = batches.get(batchCount++);
+      batch.texture = texture;
+      batch.isIso = command.isIso;
+      batch.drawType = command.drawType;
+      batch.shaderVariant = command.shaderVariant;
+      batch.firstVertex = vertexCount;
+      batch.vertexCount = 0;
+    }
+  
+    if (commandCount == commands.length) {
+      commands = Arrays.copyOf(commands, commandCount * 2);
+      commandOffsets = Arrays.copyOf(commandOffsets, commandCount * 2);
+    }
+    commands[commandCount] = command;
+    commandOffsets[commandCount] = vertexCount;
+    commandCount++;
+    batch.vertexCount += count;
+    vertexCount += count;
+  }
+  
+  
+  /**
+   * Writes the vertices of all added commands into the ring buffer and draws each batch with a single draw call
+   */
+  public void end() {
+    if (vertexCount == 0) {
+      partitionCount = 0;
+      return;
+    }
+  
+    // Each vertex carries the depth of its object. The vertices start at a whole vertex of the buffer,
+    // so all batches are drawn with the same VAO, which points to the start of the buffer
+    format = VertexFormat.getDefault().withDepth();
+    final ByteBuffer target = stream.map(vertexCount * format.getStride(), format.getStride());
+    Profiler.begin(Profiler.Zone.FILL_BATCH);
+    fill(target);
+    Profiler.end();
+    final int baseVertex = (int) (stream.unmap() / format.getStride());
+  
+    final VertexArrayObject vao = vertexArrays.get(format, stream.getID());
+    vao.bind();
+    for (int i = 0; i < batchCount; i++) {
+      final Batch batch = batches.get(i);
+      renderer.getShaders().use(batch.shaderVariant);
+      if (batch.texture != null) {
+        GLStateCache.bindTexture(ShaderRegistry.textureUnit, renderer.getTextureHandle(batch.texture));
+      }
+      renderer.getCamera().bind(batch.isIso);
+      vao.draw(batch.drawType, baseVertex + batch.firstVertex, batch.vertexCount);
+      flushCount++;
+      batch.texture = null;
+    }
+  
+    // Drop the references to the commands, they are reused by the render queue
+    Arrays.fill(commands, 0, commandCount, null);
+  }
+  
+  
+  /**
+   * Returns the amount of draw calls which were issued by this batch in the current (or last finished) frame
+   */
+  public int getFlushCount() {
+    return flushCount;
+  }
+  
+  
+  /**
+   * Returns the amount of partitions the vertices of the last frame were copied in (1 if they were copied by the drawing thread only)
+   */
+  public int getPartitionCount() {
+    return partitionCount;
+  }
+  
+  
+  /**
+   * Free up the memory of the batch (the ring buffer is owned by the renderer)
+   */
+  public void dispose() {
+    Arrays.fill(commands, null);
+    batches.clear();
+  }
+  
+  
+  /**
+   * Copies the vertices of all commands into the mapped memory.
+   * If the frame is large enough, the commands are split into partitions with about the same amount of vertices,
+   * which are copied by the worker threads of the common fork join pool. Each partition only writes its own slice.
+   */
+  private void fill(ByteBuffer target) {
+    final int maxPartitions = Math.min(
+      ForkJoinPool.getCommonPoolParallelism() + 1,
+      vertexCount / Math.max(1, Settings.parallelVertexThreshold)
+    );
+    if (maxPartitions <= 1) {
+      partitionCount = 1;
+      fillRange(target, 0, commandCount);
+      return;
+    }
+  
+    // Split the commands at the first command which starts behind each multiple of the partition size
+    final int verticesPerPartition = (vertexCount + maxPartitions - 1) / maxPartitions;
+    final int[] partitionStarts = new int[maxPartitions + 1];
+    int partitions = 0;
+    for (int i = 0; i < commandCount; i++) {
+      if (commandOffsets[i] >= partitions * verticesPerPartition) {
+        partitionStarts[partitions++] = i;
+      }
+    }
+    partitionStarts[partitions] = commandCount;
+    partitionCount = partitions;
+  
+    final int[] starts = partitionStarts;
+    IntStream.range(0, partitions).parallel().forEach(
+      partition -> fillRange(target, starts[partition], starts[partition + 1])
+    );
+  }
+  
+  
+  /**
+   * Copies the vertices of the given range of commands into their slices of the mapped memory
+   * @param firstCommand Index of the first command to copy
+   * @param endCommand Index behind the last command to copy
+   */
+  private void fillRange(ByteBuffer target, int firstCommand, int endCommand) {
+    // Each partition needs its own view, because the position of a buffer isn't thread safe
+    final ByteBuffer vertices = target.duplicate().order(target.order());
+    vertices.position(commandOffsets[firstCommand] * format.getStride());
+    for (int i = firstCommand; i < endCommand; i++) {
+      final RenderCommand command = commands[i];
+      final int count = Math.min(command.vertexCount, command.vertexData.length / floatsPerVertex);
+      format.write(command.vertexData, 0, count, command.depth, vertices);
+    }
+  }
+  
+}
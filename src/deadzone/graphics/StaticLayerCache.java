@@ -0,0 +1,429 @@
+package deadzone.graphics;
+
+import deadzone.Settings;
+import deadzone.math.Matrix4x4;
+import deadzone.math.Vector4;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static org.lwjgl.opengl.GL30.*;
+
+
+/**
+ * Caches the tiles of iso grids in offscreen framebuffers, since they rarely change.
+ * Each grid is drawn once into the texture of its framebuffer, which covers the viewport plus a margin on each side,
+ * and every frame only composites this texture with a single textured quad. So the cost of the floor doesn't depend
+ * on the amount of tiles anymore.
+ * A layer is drawn again, if tiles were added or removed, the window was resized, the camera was zoomed or rotated,
+ * or the camera moved so far that the viewport is not within the cached area anymore. If tiles only changed their
+ * appearance, only their area of the layer is drawn again.
+ * The camera must use an orthographic (affine) projection, so the cached area can be mapped onto the world plane.
+ */
+public class StaticLayerCache {
+  
+  /** Amount of floats per vertex of the composite quad: x, y, r, g, b, a, u, v */
+  private static final int floatsPerVertex = VertexFormat.sourceFloatsPerVertex;
+  
+  /** Corners of the cached area in clip space, in the vertex order of quads: top left, bottom left, bottom right, top right */
+  private static final float[] clipCorners = { -1, 1, -1, -1, 1, -1, 1, 1 };
+  
+  /**
+   * The offscreen copy of a single grid
+   */
+  private static class Layer {
+    /** The handler to access the framebuffer object in the GPU */
+    final int fboId = glGenFramebuffers();
+    /** The handler to access the color texture of the framebuffer */
+    final int textureId = glGenTextures();
+    /** Size of the texture in pixels */
+    int width;
+    int height;
+    /** Window size the layer was drawn for */
+    int windowWidth = -1;
+    int windowHeight = -1;
+    /** The combined projection and view matrix the layer was drawn with (covers the viewport plus the margin) */
+    Matrix4x4 viewProjection;
+    /** Clip space x and y of the world axes of the frame the layer was drawn for, which change with zoom and rotation */
+    final float[] axes = new float[4];
+    /** World coordinates of the corners of the cached area (x and y per corner, in the order of {@link #clipCorners}) */
+    final float[] worldCorners = new float[8];
+    /** Amount of tiles which were submitted when the layer was drawn */
+    int submittedTiles;
+    /** Frame number in which the layer was composited the last time */
+    int lastUsedFrame;
+  }
+  
+  /** The renderer which owns the cache */
+  private final Renderer renderer;
+  
+  /** Draws the tiles into the layers */
+  private final InstancedTileRenderer tileRenderer;
+  
+  /** Provides the VAO which reads the composited quads from the ring buffer */
+  private final VertexArrayRegistry vertexArrays;
+  
+  /** Ring buffer the composite quads are written into */
+  private final StreamingVertexBuffer stream;
+  
+  /** The cached layers with their grid as key */
+  private final HashMap<IsoGrid, Layer> layers = new HashMap<>();
+  
+  /** Maximum width and height of a texture supported by the graphics card */
+  private final int maxTextureSize;
+  
+  /** Amount of layers which were drawn again in the last frame */
+  private int redrawCount = 0;
+  
+  /** Reused by the checks and the composite quad of every frame, so a cached layer doesn't allocate */
+  private final float[] axes = new float[4];
+  private final float[] corners = new float[8];
+  private final float[] clipCoordinates = new float[8];
+  private final float[] compositeVertices = new float[4 * floatsPerVertex];
+  private final Vector4 origin = new Vector4();
+  private final Vector4 unitX = new Vector4();
+  private final Vector4 unitY = new Vector4();
+  private final Vector4 point = new Vector4();
+  
+  
+  public StaticLayerCache(Renderer renderer, InstancedTileRenderer tileRenderer, VertexArrayRegistry vertexArrays, StreamingVertexBuffer stream) {
+    this.renderer = renderer;
+    this.tileRenderer = tileRenderer;
+    this.vertexArrays = vertexArrays;
+    this.stream = stream;
+    maxTextureSize = glGetInteger(GL_MAX_TEXTURE_SIZE);
+  }
+  
+  
+  /**
+   * Must be called once per frame before the first grid is rendered
+   */
+  public void begin() {
+    redrawCount = 0;
+  }
+  
+  
+  /**
+   * Draws the tiles of the given grid through its cached layer. The layer is drawn again before, if it's outdated.
+   * @param data The per-tile data, if the grid was changed since it was drawn the last time (otherwise null)
+   * @param patch The data of single changed tiles, if only they were changed (otherwise null)
+   * @param tileSize Normalized width and height of a tile
+   * @param viewProjection The combined projection and view matrix for isometric rendering of the current frame
+   * @return The amount of tiles which were submitted when the layer was drawn (all tiles of the cached rows)
+   */
+  public int render(IsoGrid grid, InstancedTileRenderer.GridInstanceData data, InstancedTileRenderer.GridInstancePatch patch,
+                    float[] tileSize, Matrix4x4 viewProjection, int windowWidth, int windowHeight, int frameNumber) {
+    Layer layer = layers.get(grid);
+    if (layer == null) {
+      layer = new Layer();
+      layers.put(grid, layer);
+    }
+    layer.lastUsedFrame = frameNumber;
+  
+    if (data != null || windowWidth != layer.windowWidth || windowHeight != layer.windowHeight || !covers(layer, viewProjection)) {
+      redraw(layer, grid, data, patch, tileSize, viewProjection, windowWidth, windowHeight, frameNumber);
+    } else if (patch != null) {
+      redrawTiles(layer, grid, patch, tileSize, viewProjection, windowWidth, windowHeight, frameNumber);
+    } else {
+      tileRenderer.keep(grid, frameNumber);
+    }
+    // A layer without a matrix couldn't be mapped onto the world plane
+    if (layer.viewProjection != null) {
+      composite(layer);
+    }
+    return layer.submittedTiles;
+  }
+  
+  
+  /**
+   * Returns the amount of layers which had to be drawn again in the current (or last finished) frame
+   */
+  public int getRedrawCount() {
+    return redrawCount;
+  }
+  
+  
+  /**
+   * Removes the layers of all grids which were not drawn in the given frame
+   */
+  public void evictUnusedLayers(int frameNumber) {
+    layers.values().removeIf(layer -> {
+      if (layer.lastUsedFrame != frameNumber) {
+        delete(layer);
+        return true;
+      }
+      return false;
+    });
+  }
+  
+  
+  /**
+   * Free up all framebuffers and textures from GPU memory
+   */
+  public void dispose() {
+    layers.values().forEach(StaticLayerCache::delete);
+    layers.clear();
+  }
+  
+  
+  /**
+   * Returns true, if the layer was drawn with the same zoom and rotation as the given matrix
+   * and the viewport of the matrix is completely within the cached area
+   */
+  private boolean covers(Layer layer, Matrix4x4 viewProjection) {
+    if (layer.viewProjection == null) {
+      return false;
+    }
+    getAxes(viewProjection, axes);
+    for (int i = 0; i < axes.length; i++) {
+      if (Math.abs(axes[i] - layer.axes[i]) > 1e-6f * Math.max(1f, Math.abs(axes[i]))) {
+        return false;
+      }
+    }
+    // Every corner of the viewport must be within the cached area
+    if (!toWorldCorners(viewProjection, corners)) {
+      return false;
+    }
+    toClipCoordinates(layer.viewProjection, corners, clipCoordinates);
+    for (float coordinate : clipCoordinates) {
+      if (Math.abs(coordinate) > 1f) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  
+  /**
+   * Draws the tiles of the grid into the framebuffer of the layer.
+   * The matrix of the frame is scaled down, so the framebuffer covers the viewport plus the margin.
+   */
+  private void redraw(Layer layer, IsoGrid grid, InstancedTileRenderer.GridInstanceData data, InstancedTileRenderer.GridInstancePatch patch,
+                      float[] tileSize, Matrix4x4 viewProjection, int windowWidth, int windowHeight, int frameNumber) {
+    final float marginFactor = 1f + 2f * Math.max(0f, Settings.staticLayerMargin);
+    final int width = Math.max(1, Math.min(maxTextureSize, Math.round(windowWidth * marginFactor)));
+    final int height = Math.max(1, Math.min(maxTextureSize, Math.round(windowHeight * marginFactor)));
+    if (width != layer.width || height != layer.height) {
+      allocate(layer, width, height);
+    }
+    layer.windowWidth = windowWidth;
+    layer.windowHeight = windowHeight;
+    getAxes(viewProjection, layer.axes);
+  
+    final Matrix4x4 scaling = Matrix4x4.createScalingMatrix((float) windowWidth / width, (float) windowHeight / height, 1f);
+    layer.viewProjection = scaling.multiply(viewProjection);
+    if (!toWorldCorners(layer.viewProjection, layer.worldCorners)) {
+      // The matrix doesn't map the world plane onto the screen, so there is nothing to cache. The data is uploaded anyway
+      layer.viewProjection = null;
+      layer.submittedTiles = 0;
+      tileRenderer.update(grid, data, patch, frameNumber);
+      return;
+    }
+  
+    // Only the tiles within the cached area are drawn
+    int[] visibleRange = null;
+    if (Settings.viewportCulling) {
+      final float[] bounds = { Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+      for (int i = 0; i < 8; i += 2) {
+        bounds[0] = Math.min(bounds[0], layer.worldCorners[i]);
+        bounds[1] = Math.min(bounds[1], layer.worldCorners[i + 1]);
+        bounds[2] = Math.max(bounds[2], layer.worldCorners[i]);
+        bounds[3] = Math.max(bounds[3], layer.worldCorners[i + 1]);
+      }
+      visibleRange = grid.getCoordinateRange(bounds, Settings.cullingMargin);
+    }
+  
+    beginDrawing(layer);
+    layer.submittedTiles = tileRenderer.render(grid, data, patch, tileSize, visibleRange, frameNumber);
+    endDrawing(viewProjection, windowWidth, windowHeight);
+    redrawCount++;
+  }
+  
+  
+  /**
+   * Draws only the area of the changed tiles into the framebuffer of the layer again, limited by the scissor test
+   */
+  private void redrawTiles(Layer layer, IsoGrid grid, InstancedTileRenderer.GridInstancePatch patch, float[] tileSize,
+                           Matrix4x4 viewProjection, int windowWidth, int windowHeight, int frameNumber) {
+    // Tiles may exceed their area by the culling margin, so the redrawn area covers it and all tiles which may reach into it are drawn
+    final int margin = Math.max(0, Settings.cullingMargin);
+    final int[] changed = patch.changedRange;
+    final float left = (changed[0] - margin) * tileSize[0];
+    final float bottom = (changed[1] - margin) * tileSize[1];
+    final float right = (changed[2] + 1 + margin) * tileSize[0];
+    final float top = (changed[3] + 1 + margin) * tileSize[1];
+    final float[] areaCorners = { left, top, left, bottom, right, bottom, right, top };
+    toClipCoordinates(layer.viewProjection, areaCorners, clipCoordinates);
+    float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+    for (int i = 0; i < 8; i += 2) {
+      minX = Math.min(minX, clipCoordinates[i]);
+      minY = Math.min(minY, clipCoordinates[i + 1]);
+      maxX = Math.max(maxX, clipCoordinates[i]);
+      maxY = Math.max(maxY, clipCoordinates[i + 1]);
+    }
+    final int x0 = Math.max(0, (int) Math.floor((minX + 1f) / 2f * layer.width));
+    final int y0 = Math.max(0, (int) Math.floor((minY + 1f) / 2f * layer.height));
+    final int x1 = Math.min(layer.width, (int) Math.ceil((maxX + 1f) / 2f * layer.width));
+    final int y1 = Math.min(layer.height, (int) Math.ceil((maxY + 1f) / 2f * layer.height));
+    if (x1 <= x0 || y1 <= y0) {
+      // The changed tiles are outside of the cached area
+      tileRenderer.update(grid, null, patch, frameNumber);
+      return;
+    }
+  
+    final int[] range = { changed[0] - 2 * margin, changed[1] - 2 * margin, changed[2] + 2 * margin, changed[3] + 2 * margin };
+    GLStateCache.setCapability(GL_SCISSOR_TEST, true);
+    glScissor(x0, y0, x1 - x0, y1 - y0);
+    beginDrawing(layer);
+    tileRenderer.render(grid, null, patch, tileSize, range, frameNumber);
+    endDrawing(viewProjection, windowWidth, windowHeight);
+    GLStateCache.setCapability(GL_SCISSOR_TEST, false);
+  }
+  
+  
+  /**
+   * Clears the framebuffer of the layer (within the scissor box, if enabled) and prepares drawing the tiles into it
+   */
+  private void beginDrawing(Layer layer) {
+    // The layer is transparent where no tile is, so the tiles are blended into it with premultiplied alpha
+    GLStateCache.bindFramebuffer(layer.fboId);
+    GLStateCache.setViewport(0, 0, layer.width, layer.height);
+    glClearColor(0f, 0f, 0f, 0f);
+    glClear(GL_COLOR_BUFFER_BIT);
+    final float[] baseColor = Settings.baseColorRGBA;
+    glClearColor(baseColor[0], baseColor[1], baseColor[2], baseColor[3]);
+    GLStateCache.setBlendFuncSeparate(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA, GL_ONE, GL_ONE_MINUS_SRC_ALPHA);
+    renderer.getCamera().upload(layer.viewProjection);
+  }
+  
+  
+  /**
+   * Switches back to drawing into the window with the matrix of the frame
+   */
+  private void endDrawing(Matrix4x4 viewProjection, int windowWidth, int windowHeight) {
+    renderer.getCamera().upload(viewProjection);
+    GLStateCache.bindFramebuffer(0);
+    GLStateCache.setViewport(0, 0, windowWidth, windowHeight);
+    GLStateCache.setBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+  }
+  
+  
+  /**
+   * Draws the texture of the layer onto the cached area of the world, behind all other objects
+   */
+  private void composite(Layer layer) {
+    renderer.getShaders().use(ShaderVariant.TEXTURED);
+  
+    final float[] vertexData = compositeVertices;
+    for (int i = 0; i < 8; i += 2) {
+      final int vertex = i / 2 * floatsPerVertex;
+      vertexData[vertex] = layer.worldCorners[i];
+      vertexData[vertex + 1] = layer.worldCorners[i + 1];
+      Arrays.fill(vertexData, vertex + 2, vertex + 6, 1f);
+      vertexData[vertex + 6] = (clipCorners[i] + 1f) / 2f;
+      vertexData[vertex + 7] = (clipCorners[i + 1] + 1f) / 2f;
+    }
+    // The layer lies on the far plane, which is reserved for the tiles
+    final VertexFormat format = VertexFormat.getDefault().withDepth();
+    final ByteBuffer target = stream.map(4 * format.getStride(), format.getStride());
+    format.write(vertexData, 0, 4, 1f, target);
+    final int firstVertex = (int) (stream.unmap() / format.getStride());
+  
+    final VertexArrayObject vao = vertexArrays.get(format, stream.getID());
+    vao.bind();
+    GLStateCache.bindTexture(ShaderRegistry.textureUnit, layer.textureId);
+    renderer.getCamera().bind(true);
+    // The colors of the layer are already multiplied with their alpha
+    GLStateCache.setBlendFunc(GL_ONE, GL_ONE_MINUS_SRC_ALPHA);
+    vao.draw(GL_QUADS, firstVertex, 4);
+    GLStateCache.setBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+  }
+  
+  
+  /**
+   * (Re)allocates the color texture of the layer with the given size and attaches it to the framebuffer
+   */
+  private static void allocate(Layer layer, int width, int height) {
+    GLStateCache.bindTexture(ShaderRegistry.textureUnit, layer.textureId);
+    glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+    // The layer is drawn in its original resolution, so every pixel matches exactly one texel
+    glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+    glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+    glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+    glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+  
+    GLStateCache.bindFramebuffer(layer.fboId);
+    glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, layer.textureId, 0);
+    if (glCheckFramebufferStatus(GL_FRAMEBUFFER) != GL_FRAMEBUFFER_COMPLETE) {
+      System.err.println("Framebuffer of the static layer is incomplete");
+    }
+    GLStateCache.bindFramebuffer(0);
+    layer.width = width;
+    layer.height = height;
+  }
+  
+  
+  private static void delete(Layer layer) {
+    GLStateCache.deleteFramebuffer(layer.fboId);
+    GLStateCache.deleteTexture(layer.textureId);
+  }
+  
+  
+  /**
+   * Computes the world coordinates (plane z = 0) of the clip space corners of the given matrix
+   * @return False, if the matrix doesn't map the world plane onto the screen
+   */
+  private boolean toWorldCorners(Matrix4x4 viewProjection, float[] worldCorners) {
+    viewProjection.multiply(set(origin, 0, 0, 0, 1), origin);
+    viewProjection.multiply(set(unitX, 1, 0, 0, 0), unitX);
+    viewProjection.multiply(set(unitY, 0, 1, 0, 0), unitY);
+    final double determinant = (double) unitX.x * unitY.y - (double) unitY.x * unitX.y;
+    if (Math.abs(determinant) < 1e-12) {
+      return false;
+    }
+    for (int i = 0; i < 8; i += 2) {
+      // Solve clip = unitX * x + unitY * y + origin (Cramer's rule)
+      final double dx = clipCorners[i] - origin.x;
+      final double dy = clipCorners[i + 1] - origin.y;
+      worldCorners[i] = (float) ((dx * unitY.y - unitY.x * dy) / determinant);
+      worldCorners[i + 1] = (float) ((unitX.x * dy - dx * unitX.y) / determinant);
+    }
+    return true;
+  }
+  
+  
+  /**
+   * Writes the clip space x and y of the world x axis and the world y axis into the given array
+   */
+  private void getAxes(Matrix4x4 viewProjection, float[] axes) {
+    viewProjection.multiply(set(unitX, 1, 0, 0, 0), unitX);
+    viewProjection.multiply(set(unitY, 0, 1, 0, 0), unitY);
+    axes[0] = unitX.x;
+    axes[1] = unitX.y;
+    axes[2] = unitY.x;
+    axes[3] = unitY.y;
+  }
+  
+  
+  /**
+   * Transforms the given world coordinates (plane z = 0) into clip space coordinates
+   */
+  private void toClipCoordinates(Matrix4x4 viewProjection, float[] worldCoordinates, float[] clipCoordinates) {
+    for (int i = 0; i < worldCoordinates.length; i += 2) {
+      final Vector4 clip = viewProjection.multiply(set(point, worldCoordinates[i], worldCoordinates[i + 1], 0, 1), point);
+      clipCoordinates[i] = clip.x / clip.w;
+      clipCoordinates[i + 1] = clip.y / clip.w;
+    }
+  }
+  
+  
+  private static Vector4 set(Vector4 vector, float x, float y, float z, float w) {
+    vector.x = x;
+    vector.y = y;
+    vector.z = z;
+    vector.w = w;
+    return vector;
+  }
+  
+}
@@ -0,0 +1,249 @@
+package deadzone.graphics;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL32.*;
+
+
+/**
+ * A ring buffer for vertex data which is rewritten every frame (like the batches of the sprite batch).
+ * The buffer is split into regions, and each frame writes into its own region through
+ * <code>glMapBufferRange</code> with <code>GL_MAP_UNSYNCHRONIZED_BIT</code>, so the driver neither has to
+ * synchronize with the GPU nor to orphan the buffer. Instead, a fence is placed after the last draw call
+ * which reads a region, and the CPU waits on that fence before it writes into the region again.
+ * Since the regions are used round-robin, the GPU has usually finished them long before they are reused.
+ */
+public class StreamingVertexBuffer {
+  
+  /** Write offsets are aligned to this amount of bytes */
+  private static final int alignment = 16;
+  
+  /** Maximum time to wait for a fence per try in nanoseconds */
+  private static final long fenceTimeout = 1000000;
+  
+  /** The handler to access the native buffer in the GPU */
+  private final int vboId;
+  
+  /** Amount of regions the buffer is split into */
+  private final int regionCount;
+  
+  /** Size of a single region in bytes */
+  private int regionSize;
+  
+  /** The fence per region, which is signaled when the GPU finished all draw calls reading from it (0 if there is none) */
+  private final long[] fences;
+  
+  /** Index of the region which is currently written */
+  private int region = 0;
+  
+  /** Write offset within the current region in bytes */
+  private int regionOffset = 0;
+  
+  /** Absolute offset and size of the range which is currently mapped (size 0 if nothing is mapped) */
+  private long mappedOffset;
+  private int mappedSize = 0;
+  
+  /** The mapped memory of the last call of {@link #map(int)}, reused by LWJGL if the address didn't change */
+  private ByteBuffer mappedBuffer;
+  
+  /** Amount of fence waits and the time the CPU was blocked by them since the last frame started */
+  private int waitCount = 0;
+  private long waitNanos = 0;
+  
+  /** Amount of fence waits and the time the CPU was blocked by them in the last finished frame */
+  private int lastFrameWaitCount = 0;
+  private long lastFrameWaitNanos = 0;
+  
+  
+  /**
+   * Creates the ring buffer in the GPU memory
+   * @param regionSize Size of a single region in bytes, should be large enough for all vertices of one frame
+   * @param regionCount Amount of regions, which is the maximum count of frames the CPU can be ahead of the GPU
+   */
+  public StreamingVertexBuffer(int regionSize, int regionCount) {
+    this.regionSize = regionSize;
+    this.regionCount = regionCount;
+    fences = new long[regionCount];
+    vboId = glGenBuffers();
+    GLStateCache.bindArrayBuffer(vboId);
+    glBufferData(GL_ARRAY_BUFFER, (long) regionSize * regionCount, GL_STREAM_DRAW);
+  }
+  
+  
+  public int getID() {
+    return vboId;
+  }
+  
+  
+  /**
+   * Maps the given amount of bytes of the current region for writing and binds the buffer.
+   * If the current region has not enough space left, it is fenced and the next region is used.
+   * Must be followed by {@link #unmap()} before the data is drawn.
+   * @return The mapped memory, which must be filled completely
+   */
+  public ByteBuffer map(int size) {
+    return map(size, alignment);
+  }
+  
+  
+  /**
+   * Like {@link #map(int)}, but the absolute offset of the mapped range is a multiple of the given vertex size,
+   * so the vertices can be drawn with a VAO which points to the start of the buffer by using offset / vertexSize
+   * as first vertex.
+   */
+  public ByteBuffer map(int size, int vertexSize) {
+    if (size + vertexSize > regionSize) {
+      grow(size + vertexSize);
+    }
+    if (alignOffset(vertexSize) + size > regionSize) {
+      // The current region is exhausted, so it's handled as if the frame was finished
+      nextRegion();
+    }
+    if (regionOffset == 0) {
+      waitForRegion(region);
+    }
+    regionOffset = alignOffset(vertexSize);
+    
+    mappedOffset = (long) region * regionSize + regionOffset;
+    mappedSize = size;
+    GLStateCache.bindArrayBuffer(vboId);
+    mappedBuffer = glMapBufferRange(
+      GL_ARRAY_BUFFER,
+      mappedOffset,
+      size,
+      GL_MAP_WRITE_BIT | GL_MAP_UNSYNCHRONIZED_BIT | GL_MAP_INVALIDATE_RANGE_BIT,
+      mappedBuffer
+    );
+    return mappedBuffer;
+  }
+  
+  
+  /**
+   * Returns the write offset within the current region, moved forward until the absolute offset is a multiple of the given size
+   */
+  private int alignOffset(int size) {
+    final long regionStart = (long) region * regionSize;
+    final long absoluteOffset = (regionStart + regionOffset + size - 1) / size * size;
+    return (int) (absoluteOffset - regionStart);
+  }
+  
+  
+  /**
+   * Finishes writing the mapped range, so it can be drawn
+   * @return The byte offset of the written data in the buffer, used as base offset for the vertex attributes
+   */
+  public long unmap() {
+    GLStateCache.bindArrayBuffer(vboId);
+    if (!glUnmapBuffer(GL_ARRAY_BUFFER)) {
+      System.err.println("Streaming vertex buffer was corrupted while it was mapped");
+    }
+    regionOffset += mappedSize;
+    mappedSize = 0;
+    return mappedOffset;
+  }
+  
+  
+  /**
+   * Must be called once per frame after all draw calls which read from this buffer were issued.
+   * Fences the region of the frame and continues with the next region.
+   */
+  public void endFrame() {
+    if (regionOffset > 0) {
+      nextRegion();
+    }
+    lastFrameWaitCount = waitCount;
+    lastFrameWaitNanos = waitNanos;
+    waitCount = 0;
+    waitNanos = 0;
+  }
+  
+  
+  /**
+   * Returns how often the CPU had to wait for the GPU in the last frame before it could reuse a region.
+   * If this is not 0, the buffer has too few or too small regions.
+   */
+  public int getWaitCount() {
+    return lastFrameWaitCount;
+  }
+  
+  
+  /**
+   * Returns the time in nanoseconds the CPU was blocked by fence waits in the last frame
+   */
+  public long getWaitNanos() {
+    return lastFrameWaitNanos;
+  }
+  
+  
+  /**
+   * Free up the buffer and all fences from GPU memory
+   */
+  public void dispose() {
+    deleteFences();
+    GLStateCache.deleteBuffer(vboId);
+  }
+  
+  
+  /**
+   * Places a fence behind the draw calls of the current region and continues with the next one
+   */
+  private void nextRegion() {
+    if (fences[region] != 0) {
+      glDeleteSync(fences[region]);
+    }
+    fences[region] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+    region = (region + 1) % regionCount;
+    regionOffset = 0;
+  }
+  
+  
+  /**
+   * Blocks until the GPU finished all draw calls which read from the given region
+   */
+  private void waitForRegion(int region) {
+    final long fence = fences[region];
+    if (fence == 0) {
+      return;
+    }
+    // Check without timeout first, because usually the GPU is done already
+    int result = glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, 0);
+    if (result == GL_TIMEOUT_EXPIRED) {
+      final long start = System.nanoTime();
+      do {
+        result = glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, fenceTimeout);
+      } while (result == GL_TIMEOUT_EXPIRED);
+      waitCount++;
+      waitNanos += System.nanoTime() - start;
+    }
+    if (result == GL_WAIT_FAILED) {
+      System.err.println("Waiting for the streaming vertex buffer fence failed");
+    }
+    glDeleteSync(fence);
+    fences[region] = 0;
+  }
+  
+  
+  /**
+   * Reallocates the buffer with regions which can hold at least the given amount of bytes.
+   * The old storage is orphaned, so no fence has to be waited for.
+   */
+  private void grow(int minRegionSize) {
+    regionSize = Math.max(minRegionSize, regionSize * 2);
+    deleteFences();
+    GLStateCache.bindArrayBuffer(vboId);
+    glBufferData(GL_ARRAY_BUFFER, (long) regionSize * regionCount, GL_STREAM_DRAW);
+    region = 0;
+    regionOffset = 0;
+  }
+  
+  
+  private void deleteFences() {
+    for (int i = 0; i < regionCount; i++) {
+      if (fences[i] != 0) {
+        glDeleteSync(fences[i]);
+        fences[i] = 0;
+      }
+    }
+  }
+  
+}
@@ -1,6 +1,7 @@
 package deadzone.graphics;
 
 import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL32.glDrawElementsBaseVertex;
 
 /**
  * This class represents a single renderable object in the GPU memory with all its data in an OpenGL compatible format.
@@ -12,12 +13,11 @@ public class VertexArrayObject {
   /** The handler to access the native VAO object in the GPU */
   private final int vaoId;
   
-  /** Because we use one VAO per OpenGL render type (like GL_TRIANGLES, ...) we must specify for which one this VAO is made for */
-  public final int GL_RENDER_TYPE;
+  /** The shared index buffer which splits each quad into two triangles (null if the VAO can't draw quads) */
+  private QuadIndexBuffer quadIndices;
   
   
-  public VertexArrayObject(int GL_RENDER_TYPE) {
-    this.GL_RENDER_TYPE = GL_RENDER_TYPE;
+  public VertexArrayObject() {
     vaoId = glGenVertexArrays();
   }
   
@@ -26,11 +26,38 @@ public class VertexArrayObject {
   }
   
   public void bind() {
-    glBindVertexArray(vaoId);
+    GLStateCache.bindVertexArray(vaoId);
   }
   
   public void delete() {
-    glDeleteVertexArrays(vaoId);
+    GLStateCache.deleteVertexArray(vaoId);
   }
   
-}
\ No newline at end of file
+  /**
+   * Attaches the shared quad index buffer to this VAO, so quads of 4 vertices each can be drawn indexed as two triangles.
+   */
+  public void attachQuadIndexBuffer(QuadIndexBuffer quadIndices) {
+    this.quadIndices = quadIndices;
+    bind();
+    quadIndices.bind();
+  }
+  
+  /**
+   * Draws the given vertex range of the vertex buffer the attributes of this VAO point to.
+   * Expects this VAO to be bound.
+   * @param drawType The OpenGL render type, like GL_TRIANGLES. Quads are drawn with the attached quad index buffer
+   * @param firstVertex Index of the first vertex to draw
+   * @param vertexCount Amount of vertices to draw (for quads a multiple of 4)
+   */
+  public void draw(int drawType, int firstVertex, int vertexCount) {
+    if (drawType != GL_QUADS || quadIndices == null) {
+      glDrawArrays(drawType, firstVertex, vertexCount);
+      return;
+    }
+    // The indices always start at the first quad, the base vertex moves them to the drawn range
+    final int quadCount = vertexCount / QuadIndexBuffer.verticesPerQuad;
+    quadIndices.ensureCapacity(quadCount);
+    glDrawElementsBaseVertex(GL_TRIANGLES, quadCount * QuadIndexBuffer.indicesPerQuad, GL_UNSIGNED_INT, 0, firstVertex);
+  }
+  
+}
@@ -0,0 +1,70 @@
+package deadzone.graphics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Creates and keeps one VAO per combination of vertex format and vertex buffer.
+ * The attribute pointers of a VAO are specified only once when it is created, since the inputs have the same
+ * location in all shader programs. Drawing a buffer is then just binding its VAO and issuing the draw call.
+ * Every VAO has the shared quad index buffer attached, so it can draw any render type.
+ */
+public class VertexArrayRegistry {
+  
+  /** The index buffer which is attached to every VAO */
+  private final QuadIndexBuffer quadIndices;
+  
+  /** The VAOs per format with the id of the vertex buffer as key */
+  private final HashMap<VertexFormat, HashMap<Integer, VertexArrayObject>> vertexArrays = new HashMap<>();
+  
+  
+  public VertexArrayRegistry(QuadIndexBuffer quadIndices) {
+    this.quadIndices = quadIndices;
+  }
+  
+  
+  /**
+   * Returns the VAO which reads vertices of the given format from the start of the given buffer.
+   * The VAO is created on first use, which leaves it bound.
+   */
+  public VertexArrayObject get(VertexFormat format, int bufferId) {
+    final HashMap<Integer, VertexArrayObject> buffers = vertexArrays.computeIfAbsent(format, f -> new HashMap<>());
+    VertexArrayObject vao = buffers.get(bufferId);
+    if (vao == null) {
+      vao = new VertexArrayObject();
+      vao.bind();
+      GLStateCache.bindArrayBuffer(bufferId);
+      format.specify();
+      vao.attachQuadIndexBuffer(quadIndices);
+      buffers.put(bufferId, vao);
+    }
+    return vao;
+  }
+  
+  
+  /**
+   * Deletes all VAOs which read from the given buffer. Must be called before the buffer is deleted,
+   * because a new buffer may get the same id.
+   */
+  public void release(int bufferId) {
+    for (HashMap<Integer, VertexArrayObject> buffers : vertexArrays.values()) {
+      final VertexArrayObject vao = buffers.remove(bufferId);
+      if (vao != null) {
+        vao.delete();
+      }
+    }
+  }
+  
+  
+  /**
+   * Deletes all VAOs
+   */
+  public void dispose() {
+    for (Map<Integer, VertexArrayObject> buffers : vertexArrays.values()) {
+      buffers.values().forEach(VertexArrayObject::delete);
+    }
+    vertexArrays.clear();
+  }
+  
+}
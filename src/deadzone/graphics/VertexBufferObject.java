@@ -1,14 +1,11 @@
 package deadzone.graphics;
 
 import deadzone.Deadzone;
-import deadzone.Window;
+import deadzone.Settings;
 import deadzone.assets.Texture;
-import deadzone.math.Matrix4x4;
-import deadzone.math.Vector4;
-import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
 
 import java.nio.ByteBuffer;
-import java.nio.FloatBuffer;
 
 import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL20.*;
@@ -22,22 +19,40 @@ public class VertexBufferObject {
   /** Defines the memory management strategy for OpenGL. Bad chose might decrease performance */
   private final int usageType;
   
-  /** The handler to access the native VBO variant OpenGL uses */
-  private int vboId;
+  /** The handler to access the native VBO variant OpenGL uses (0 as long as the VBO is not resident in the GPU) */
+  private int vboId = 0;
   
-  /** Buffer which stores the vertices to handover it to the GPU */
-  FloatBuffer vertices;
+  /** Amount of floats the GPU buffer was allocated for. If the vertex data grows beyond it, the buffer is reallocated */
+  private int capacity = 0;
   
-  /** If the VBO uses a texture, its handle to the location in the GPU memory is stored here */
-  private int textureHandle = 0;
-  
-  /** Stores the texture object, if any TODO: Nicht die ganze Texture mitgeben sondern nur die Textur Data, aber erstmal so testen  */
+  /** Stores the texture object, if any. While the VBO is resident in the GPU, it holds a reference to the GPU texture */
   private Texture texture;
   
-  /** Stores the raw data received from the constructor for later use when initialized */
-  private final float[] vertexData;
+  /** Layout of the vertices in the GPU buffer */
+  private final VertexFormat format = VertexFormat.getDefault();
+  
+  /** The VAO which reads the vertices of this buffer (null as long as the VBO is not resident in the GPU) */
+  private VertexArrayObject vertexArray;
+  
+  /** Stores the raw vertex data which is (or will be) mirrored in the GPU buffer, converted into the vertex format */
+  private float[] vertexData;
+  
+  /** True, if the vertex color of at least one vertex is partially transparent */
+  private boolean translucentVertices;
+  
+  /**
+   * First float index of the range which was modified since the object was registered the last time (-1 if unmodified).
+   * Only used by the game thread, the range is handed to the renderer with the render command of the object.
+   */
+  private int dirtyFrom = -1;
   
-  /** If true, an isometric projection matrix will be used for this VBO */
+  /** Float index behind the last modified value of the dirty range */
+  private int dirtyTo = -1;
+  
+  /** Frame number of the renderer in which this VBO was drawn the last time. Used to evict unused VBOs from the GPU */
+  int lastUsedFrame = -1;
+  
+  /** If true, the isometric camera block will be used for this VBO */
   private final boolean isIso;
   
   
@@ -49,6 +64,7 @@ public class VertexBufferObject {
    */
   public VertexBufferObject(boolean isIso, Texture texture, float[] vertexData) {
     this.vertexData = vertexData;
+    this.translucentVertices = hasTranslucentVertex(vertexData);
     this.texture = texture;
     this.isIso = isIso;
     this.usageType = GL_DYNAMIC_DRAW;
@@ -76,6 +92,7 @@ public class VertexBufferObject {
    */
   public VertexBufferObject(boolean isIso, Texture texture, float[] vertexData, int usageType) {
     this.vertexData = vertexData;
+    this.translucentVertices = hasTranslucentVertex(vertexData);
     this.texture = texture;
     this.isIso = isIso;
     this.usageType = usageType;
@@ -84,159 +101,251 @@ public class VertexBufferObject {
   
   
   /**
-   * Set up the GPU object which is related to this java-sided object
+   * Set up the GPU object which is related to this java-sided object and uploads the given vertex data.
+   * The buffer stays resident in the GPU until {@link #delete()} is called, so calling this method again
+   * for an already initialized VBO does nothing.
    */
-  public void initialize() {
+  private void initialize(float[] vertexData) {
+    if (vboId != 0) {
+      return;
+    }
     vboId = glGenBuffers();
-    try (MemoryStack stack = MemoryStack.stackPush()) {
-      vertices = stack.mallocFloat(vertexData.length);
-      vertices.put(vertexData);
-      vertices.flip();
-      glBindBuffer(GL_ARRAY_BUFFER, vboId);
-      glBufferData(GL_ARRAY_BUFFER, vertices, usageType);
+    GLStateCache.bindArrayBuffer(vboId);
+    allocate(vertexData);
+    vertexArray = getVertexArrays().get(format, vboId);
+    texture.acquire();
+  }
+  
+  
+  /**
+   * Binds this VBO and its VAO for the upcoming draw call.
+   * Uploads the vertex data of the command before, which was modified since the object was registered the last time,
+   * so the GPU data is in sync with the java-sided data the command was taken from.
+   */
+  void bind(RenderCommand command) {
+    final boolean initialized = vboId != 0;
+    initialize(command.vertexData);
+    GLStateCache.bindArrayBuffer(vboId);
+    
+    if (command.vertexData.length > capacity) {
+      // Data grew beyond the allocated size, so we need to reallocate the whole buffer
+      allocate(command.vertexData);
+    } else if (initialized && command.dirtyFrom != -1) {
+      // Otherwise update only the range which was actually modified
+      uploadRange(command.vertexData, command.dirtyFrom, command.dirtyTo);
     }
-    loadTexture();
-    specifyVertexAttributes();
-    specifyUniformData();
+    
+    // The plain white texture is drawn by the untextured shader variant, which doesn't sample it
+    if (!texture.isPlainWhite()) {
+      GLStateCache.bindTexture(ShaderRegistry.textureUnit, texture.getHandle());
+    }
+    vertexArray.bind();
+    Deadzone.getApplication().getRenderer().getCamera().bind(isIso);
+  }
+  
+  
+  /**
+   * Draws the first vertices of this VBO. Expects the VBO to be bound.
+   * @param drawType The OpenGL render type, like GL_TRIANGLES
+   */
+  public void draw(int drawType, int vertexCount) {
+    vertexArray.draw(drawType, 0, vertexCount);
+  }
+  
+  
+  public Texture getTexture() {
+    return texture;
   }
   
   
+  /**
+   * Returns true, if this VBO is rendered with the isometric projection
+   */
+  public boolean isIso() {
+    return isIso;
+  }
+  
+  
+  /**
+   * Removes the GPU object which is related to this java-sided object.
+   * The java-sided data is kept, so the VBO can be initialized again later.
+   */
   public void delete() {
-    glDeleteBuffers(vboId);
-    if (textureHandle != 0) {
-      glDeleteTextures(textureHandle);
+    if (vboId != 0) {
+      getVertexArrays().release(vboId);
+      vertexArray = null;
+      GLStateCache.deleteBuffer(vboId);
+      vboId = 0;
+      capacity = 0;
+      texture.release();
     }
   }
   
   
-  public int getID() {
-    return vboId;
+  /**
+   * Returns true, if the VBO currently has a buffer in the GPU memory
+   */
+  public boolean isInitialized() {
+    return vboId != 0;
   }
   
   
-  public void setTexture(Texture texture) {
-    this.texture = texture;
+  /**
+   * Replaces the whole vertex data of this VBO.
+   * The data is uploaded with the next draw call, the GPU buffer is only reallocated if the new data doesn't fit in.
+   */
+  public void setVertexData(float[] vertexData) {
+    this.vertexData = vertexData;
+    translucentVertices = hasTranslucentVertex(vertexData);
+    markDirty(0, vertexData.length);
   }
   
   
+  /**
+   * Overwrites a part of the vertex data, starting at the given float index.
+   * Only the modified range will be uploaded with the next draw call.
+   * If the render thread is enabled, the whole array is copied before, because the old array may still be drawn.
+   * So in this mode a partial update costs as much on the CPU as replacing the whole data, only the upload stays smaller.
+   */
+  public void updateVertexData(int offset, float[] data) {
+    if (Settings.renderThread) {
+      vertexData = vertexData.clone();
+    }
+    System.arraycopy(data, 0, vertexData, offset, data.length);
+    translucentVertices = hasTranslucentVertex(vertexData);
+    markDirty(offset, offset + data.length);
+  }
+  
   
   /**
-   * Default mappings for the input values of the VBO and the input values of the first shader (vertex shader).
-   * This default setup consists of 6 values:
-   * x position
-   * y position
-   * r color value
-   * g color value
-   * b color value
-   * a color value
-   * U texture coordinate
-   * V texture coordinate
+   * Marks the given float range as modified, so it will be uploaded with the next draw call.
+   * @param from First modified float index
+   * @param to Float index behind the last modified value
    */
-  private void specifyVertexAttributes() {
-    final int shaderProgram = Deadzone.getApplication().getRenderer().getShaderProgram().getProgramId();
-    final int bytePerFloat = Float.BYTES;
-
-    // Define the position data input (float values 1+2)
-    int positionAttribute = glGetAttribLocation(shaderProgram, "position");
-    glEnableVertexAttribArray(positionAttribute);
-    glVertexAttribPointer(positionAttribute, 2, GL_FLOAT, false, 8 * bytePerFloat, 0);
-    
-    // Define the color data input (float values 3-6)
-    int colorAttribute = glGetAttribLocation(shaderProgram, "color");
-    glEnableVertexAttribArray(colorAttribute);
-    glVertexAttribPointer(colorAttribute, 4, GL_FLOAT, false, 8 * bytePerFloat, 2 * bytePerFloat);
-    
-    // Define the texture coordinates input (float values 7+8)
-    int texcoordAttribute = glGetAttribLocation(shaderProgram, "texcoord");
-    glEnableVertexAttribArray(texcoordAttribute);
-    glVertexAttribPointer(texcoordAttribute, 2, GL_FLOAT, false, 8 * bytePerFloat, 6 * bytePerFloat);
-
+  private void markDirty(int from, int to) {
+    dirtyFrom = (dirtyFrom == -1) ? from : Math.min(dirtyFrom, from);
+    dirtyTo = Math.max(dirtyTo, to);
   }
   
   
   /**
-   * Maps the MVP projection matrix to the uniform input of the vertex shader.
-   * This matrix is mainly used for the isometric projection of any IIsoObject.
+   * Returns true, if the vertex color of at least one vertex is partially transparent, so the VBO must be blended
    */
-  private void specifyUniformData() {
-    final int shaderProgram = Deadzone.getApplication().getRenderer().getShaderProgram().getProgramId();
+  public boolean hasTranslucentVertices() {
+    return translucentVertices;
+  }
   
-    // For model, we just use an identity matrix (no translation, so the mesh stays at its origin)
-    Matrix4x4 model = new Matrix4x4();
-    Matrix4x4 view;
-    Matrix4x4 projection;
-    
-    if (isIso) {
-      // View (Camera) for isometric rendering
-      // TODO: Adjust the move matrix values to create a proper isometric projection
-          view = new Matrix4x4(
-            new Vector4(5, -2, 8, 0),         // move camera to (5|-2|8)
-            new Vector4(0, 1, 0, 0),                 // look at the origin
-            new Vector4(0, 1, 0, 0),                 // head is up (upside-down would be 0, -1, 0) Im Grunde rotiert man damit die Kamera seitlich
-            new Vector4(0, 0, 0, 1)                  // neutral element
-          );
-
-      // Projection (Mesh) for isometric rendering
-      final Window window = Deadzone.getApplication().getWindow();
-      final float ratio = (float) window.getPixelWidth() / (float) window.getPixelHeight();
-      projection = Matrix4x4.createOrthoProjectionMatrix(-ratio, ratio, -1f, 1f, -1f, 1f);
-    } else {
-      // Otherwise use "neutral" identity matrix for view and projection matrix
-      view = new Matrix4x4();
-      projection = new Matrix4x4();
-    }
-    
-    // attach the matrices to the vertex shader
-    try (MemoryStack modelStack = MemoryStack.stackPush()) {
-      FloatBuffer modelBuffer = modelStack.mallocFloat(16);
-      model.toBuffer(modelBuffer);
-      glUniformMatrix4fv(glGetUniformLocation(shaderProgram, "model"), false, modelBuffer);
-    }
-    
-    try (MemoryStack viewStack = MemoryStack.stackPush()) {
-      FloatBuffer viewBuffer = viewStack.mallocFloat(16);
-      view.toBuffer(viewBuffer);
-      glUniformMatrix4fv(glGetUniformLocation(shaderProgram, "view"), true, viewBuffer);
+  
+  /**
+   * Returns true, if the alpha of any vertex of the given vertex data is below 1
+   */
+  private static boolean hasTranslucentVertex(float[] vertexData) {
+    for (int alpha = 5; alpha < vertexData.length; alpha += VertexFormat.sourceFloatsPerVertex) {
+      if (vertexData[alpha] < 1f) {
+        return true;
+      }
     }
-    
-    try (MemoryStack projectionStack = MemoryStack.stackPush()) {
-      FloatBuffer projectionBuffer = projectionStack.mallocFloat(16);
-      projection.toBuffer(projectionBuffer);
-      glUniformMatrix4fv( glGetUniformLocation(shaderProgram, "projection"), false, projectionBuffer);
+    return false;
+  }
+  
+  
+  /**
+   * Returns true, if there are modifications which were not handed to the renderer yet
+   */
+  public boolean isDirty() {
+    return dirtyFrom != -1;
+  }
+  
+  
+  /**
+   * Hands the current vertex data and the range which was modified since the last call to the given render command.
+   * Must be called by the game thread while the object is registered, so no modification is lost.
+   * If the command isn't drawn from this VBO (but batched), the GPU buffer is evicted at the end of the frame,
+   * so it's uploaded completely the next time instead of missing the range.
+   */
+  void takeSnapshot(RenderCommand command) {
+    command.vertexData = vertexData;
+    command.dirtyFrom = dirtyFrom;
+    command.dirtyTo = dirtyTo;
+    dirtyFrom = dirtyTo = -1;
+  }
+  
+  
+  /**
+   * Returns the current vertex data. The array must not be modified, because the render thread may still draw it.
+   * Changes must go through {@link #setVertexData(float[])} or {@link #updateVertexData(int, float[])},
+   * which replace the array instead of changing it in place.
+   */
+  public float[] getVertexData() {
+    return vertexData;
+  }
+  
+  
+  public int getID() {
+    return vboId;
+  }
+  
+  
+  /**
+   * Replaces the texture. If the VBO is resident in the GPU, the reference is moved to the new texture,
+   * which is only uploaded if no other object uses it yet.
+   */
+  public void setTexture(Texture texture) {
+    if (this.texture != texture) {
+      if (vboId != 0) {
+        texture.acquire();
+        this.texture.release();
+      }
+      this.texture = texture;
     }
-    
-    // Map texture data to the uniform variable (optional, because we only have one uniform variable in fragment shader, so its automatically mapped to location 0)
-    glUniform1i(glGetUniformLocation(shaderProgram, "textureData"), 0);
   }
   
   
   /**
-   * Maps the texture data to the fragment shader
+   * Allocates the GPU buffer for the given vertex data and uploads all of it.
+   * Expects the VBO to be bound.
    */
-  private void loadTexture() {
-    // Generate and bind a buffer for the texture
-    textureHandle = glGenTextures();
-    
-    glActiveTexture(GL_TEXTURE0);
-    glBindTexture(GL_TEXTURE_2D, textureHandle);
+  private void allocate(float[] vertexData) {
+    final int vertexCount = vertexData.length / VertexFormat.sourceFloatsPerVertex;
+    final ByteBuffer vertices = MemoryUtil.memAlloc(vertexCount * format.getStride());
+    format.write(vertexData, 0, vertexCount, 0f, vertices);
+    vertices.flip();
+    glBufferData(GL_ARRAY_BUFFER, vertices, usageType);
+    MemoryUtil.memFree(vertices);
+    capacity = vertexData.length;
+  }
+  
+  
+  /**
+   * Uploads the vertices which contain the given float range of the given vertex data into the already allocated GPU buffer.
+   * Expects the VBO to be bound.
+   */
+  private void uploadRange(float[] vertexData, int from, int to) {
+    final int firstVertex = from / VertexFormat.sourceFloatsPerVertex;
+    final int endVertex = Math.min(
+      (to + VertexFormat.sourceFloatsPerVertex - 1) / VertexFormat.sourceFloatsPerVertex,
+      vertexData.length / VertexFormat.sourceFloatsPerVertex
+    );
+    if (endVertex > firstVertex) {
+      final ByteBuffer vertices = MemoryUtil.memAlloc((endVertex - firstVertex) * format.getStride());
+      format.write(vertexData, firstVertex, endVertex - firstVertex, 0f, vertices);
+      vertices.flip();
+      glBufferSubData(GL_ARRAY_BUFFER, (long) firstVertex * format.getStride(), vertices);
+      MemoryUtil.memFree(vertices);
+    }
+  }
   
-    ByteBuffer imageData = texture.getData();
-    
-    // Specify texture wrapping mode
-    glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
-    glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
   
-    // Specify texture filtering mode
-    glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
-    glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+  /**
+   * Sets the clip space depth of all vertices of the upcoming draw calls, as long as the depth is not read from a buffer
+   */
+  static void setDepth(float depth) {
+    glVertexAttrib1f(VertexFormat.depthLocation, depth);
+  }
   
-    // Send the texture to the shader pipeline
-    glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, texture.width, texture.height, 0, GL_RGBA, GL_UNSIGNED_BYTE, imageData);
   
-    // Generate mipmaps for different levels of detail (optional, costs A LOT performance!)
-//    glGenerateMipmap(GL_TEXTURE_2D);
-//    glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
-//    glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+  private static VertexArrayRegistry getVertexArrays() {
+    return Deadzone.getApplication().getRenderer().getVertexArrays();
   }
   
 }
@@ -0,0 +1,225 @@
+package deadzone.graphics;
+
+import deadzone.Settings;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL20.*;
+
+
+/**
+ * Describes how the vertices are laid out in a GPU buffer.
+ * All renderable objects keep their vertex data as 8 floats per vertex (x, y, r, g, b, a, u, v), which is converted
+ * into the format when it's written into a GPU buffer. The packed format stores the color as 4 normalized bytes and
+ * the texture coordinates as 2 normalized shorts, which halves the size of a vertex from 32 to 16 bytes.
+ * The position stays a float pair, because the world coordinates are not limited to a fixed range.
+ * Every format has a variant with an additional depth per vertex, which is used by buffers with objects of different depths.
+ * Each input has the same location in all shader programs, so a VAO can be set up once per format and buffer
+ * and used with any program.
+ */
+public class VertexFormat {
+  
+  /** Amount of floats per vertex of the vertex data of all renderable objects: x, y, r, g, b, a, u, v */
+  public static final int sourceFloatsPerVertex = 8;
+  
+  /** Names of all inputs of the vertex shaders which are fed by vertex formats, the index is their location */
+  private static final String[] attributeNames = { "position", "color", "texcoord", "depth" };
+  
+  /** Location of the depth input, which is set as constant if the format has no depth */
+  static final int depthLocation = 3;
+  
+  /** Every value as 32 bit float (32 bytes per vertex) */
+  public static final VertexFormat FLOAT = new VertexFormat(false,
+    new Attribute("position", 2, GL_FLOAT, false),
+    new Attribute("color", 4, GL_FLOAT, false),
+    new Attribute("texcoord", 2, GL_FLOAT, false)
+  );
+  
+  /** Float position, normalized unsigned byte color and normalized unsigned short texture coordinates (16 bytes per vertex) */
+  public static final VertexFormat PACKED = new VertexFormat(false,
+    new Attribute("position", 2, GL_FLOAT, false),
+    new Attribute("color", 4, GL_UNSIGNED_BYTE, true),
+    new Attribute("texcoord", 2, GL_UNSIGNED_SHORT, true)
+  );
+  
+  /**
+   * A single input of the vertex shader
+   */
+  static class Attribute {
+    /** Name of the input in the vertex shader */
+    final String name;
+    /** Amount of components */
+    final int size;
+    /** OpenGL type of each component, like GL_FLOAT */
+    final int type;
+    /** If true, integer components are mapped to 0-1 */
+    final boolean normalized;
+    /** Location of the input in all shader programs */
+    final int location;
+    /** Byte offset of the attribute within a vertex */
+    int offset;
+  
+    Attribute(String name, int size, int type, boolean normalized) {
+      this.name = name;
+      this.size = size;
+      this.type = type;
+      this.normalized = normalized;
+      this.location = Arrays.asList(attributeNames).indexOf(name);
+    }
+  
+    int getByteSize() {
+      switch (type) {
+        case GL_UNSIGNED_BYTE:
+          return size;
+        case GL_UNSIGNED_SHORT:
+          return size * 2;
+        default:
+          return size * 4;
+      }
+    }
+  }
+  
+  /** The attributes in the order of the source vertex data */
+  private final Attribute[] attributes;
+  
+  /** Amount of bytes per vertex */
+  private final int stride;
+  
+  /** True, if every attribute is stored as float, so the source data can be copied without conversion */
+  private final boolean floatOnly;
+  
+  /** True, if the last attribute is the depth, which is not part of the source vertex data */
+  private final boolean hasDepth;
+  
+  /** The same format with an additional depth per vertex (this format, if it has a depth already) */
+  private final VertexFormat depthFormat;
+  
+  
+  private VertexFormat(boolean hasDepth, Attribute... attributes) {
+    this.attributes = attributes;
+    this.hasDepth = hasDepth;
+    int offset = 0;
+    boolean floatOnly = true;
+    for (Attribute attribute : attributes) {
+      attribute.offset = offset;
+      // Every attribute starts at a multiple of 4 bytes
+      offset += (attribute.getByteSize() + 3) / 4 * 4;
+      floatOnly &= attribute.type == GL_FLOAT;
+    }
+    this.stride = offset;
+    this.floatOnly = floatOnly;
+  
+    if (hasDepth) {
+      depthFormat = this;
+    } else {
+      final Attribute[] depthAttributes = new Attribute[attributes.length + 1];
+      for (int i = 0; i < attributes.length; i++) {
+        final Attribute attribute = attributes[i];
+        depthAttributes[i] = new Attribute(attribute.name, attribute.size, attribute.type, attribute.normalized);
+      }
+      depthAttributes[attributes.length] = new Attribute("depth", 1, GL_FLOAT, false);
+      depthFormat = new VertexFormat(true, depthAttributes);
+    }
+  }
+  
+  
+  /**
+   * Assigns the fixed locations to the inputs of the given shader program. Must be called before the program is linked.
+   */
+  static void bindAttributeLocations(int programId) {
+    for (int location = 0; location < attributeNames.length; location++) {
+      glBindAttribLocation(programId, location, attributeNames[location]);
+    }
+  }
+  
+  
+  /**
+   * Returns the format which is used for new vertex buffers, depending on the settings
+   */
+  public static VertexFormat getDefault() {
+    return Settings.packedVertices ? PACKED : FLOAT;
+  }
+  
+  
+  /**
+   * Returns the same format with an additional depth per vertex
+   */
+  public VertexFormat withDepth() {
+    return depthFormat;
+  }
+  
+  
+  /**
+   * Returns the amount of bytes per vertex
+   */
+  public int getStride() {
+    return stride;
+  }
+  
+  
+  /**
+   * Points the shader inputs to the vertices of the bound buffer. Expects the VAO which stores the setup to be bound.
+   */
+  void specify() {
+    for (Attribute attribute : attributes) {
+      glEnableVertexAttribArray(attribute.location);
+      glVertexAttribPointer(attribute.location, attribute.size, attribute.type, attribute.normalized, stride, attribute.offset);
+    }
+  }
+  
+  
+  /**
+   * Converts vertices of the source vertex data into this format and writes them into the target at its position.
+   * The position of the target is moved behind the written vertices. The target must use the native byte order.
+   * @param source Vertex data with 8 floats per vertex
+   * @param firstVertex Index of the first vertex to convert
+   * @param vertexCount Amount of vertices to convert
+   * @param depth The depth of all written vertices (ignored if the format has no depth)
+   */
+  public void write(float[] source, int firstVertex, int vertexCount, float depth, ByteBuffer target) {
+    if (floatOnly && !hasDepth) {
+      target.asFloatBuffer().put(source, firstVertex * sourceFloatsPerVertex, vertexCount * sourceFloatsPerVertex);
+      target.position(target.position() + vertexCount * stride);
+      return;
+    }
+    int sourceIndex = firstVertex * sourceFloatsPerVertex;
+    int vertexStart = target.position();
+    for (int vertex = 0; vertex < vertexCount; vertex++) {
+      for (Attribute attribute : attributes) {
+        int targetIndex = vertexStart + attribute.offset;
+        if (attribute.location == depthLocation) {
+          target.putFloat(targetIndex, depth);
+          continue;
+        }
+        for (int component = 0; component < attribute.size; component++) {
+          final float value = source[sourceIndex++];
+          switch (attribute.type) {
+            case GL_UNSIGNED_BYTE:
+              target.put(targetIndex, (byte) Math.round(clamp(value) * 255f));
+              targetIndex += 1;
+              break;
+            case GL_UNSIGNED_SHORT:
+              target.putShort(targetIndex, (short) Math.round(clamp(value) * 65535f));
+              targetIndex += 2;
+              break;
+            default:
+              target.putFloat(targetIndex, value);
+              targetIndex += 4;
+          }
+        }
+      }
+      vertexStart += stride;
+    }
+    target.position(vertexStart);
+  }
+  
+  
+  /**
+   * Clamps a normalized value to 0-1
+   */
+  private static float clamp(float value) {
+    return Math.max(0f, Math.min(1f, value));
+  }
+  
+}
@@ -56,6 +56,8 @@ public class Font {
       attributes.getNamedItem("atlas").getTextContent(),
       Util.getFontsDir()
     );
+    // The glyphs are tinted with the color of the text
+    atlasTexture.setAlphaMask(true);
     
     // fetch and process glyph data
     final NodeList fontNodeContent = xml.getElementsByTagName("font").item(0).getChildNodes();
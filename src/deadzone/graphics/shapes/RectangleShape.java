@@ -6,16 +6,16 @@ import deadzone.graphics.Color;
 import deadzone.graphics.IShape;
 import deadzone.graphics.VertexBufferObject;
 
-import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11.GL_QUADS;
 
 
 public class RectangleShape implements IShape {
   
   /** The mesh type so the renderer knows to which VAO the objects VBOs must be attached */
-  private static final int glRenderType = GL_TRIANGLES;
+  private static final int glRenderType = GL_QUADS;
   
   /** The sum of vertices of all VBOs of the object */
-  private static final int vertexCount = 6;    // TODO: Set to 4 after implementing vertex index buffer (EBO)
+  private static final int vertexCount = 4;
   
   /** VBO which will form this object in the GPU */
   private VertexBufferObject vbo;
@@ -94,19 +94,20 @@ public class RectangleShape implements IShape {
       alpha = color.getAlphaNormalized();
     }
     
-    // Create the two VBOs which represents the given rectangle
+    // Texture coordinates within the atlas page, if the texture was packed into an atlas
+    final float u0 = texture.mapU(0), v0 = texture.mapV(0);
+    final float u1 = texture.mapU(1), v1 = texture.mapV(1);
+    
+    // Create the VBO which represents the given rectangle
     vbo = new VertexBufferObject(
       false,
       texture,
       new float[] {
-        // Triangle 1
-        x, y + height, red, green, blue, alpha, 0, 1,
-        x, y, red, green, blue, alpha, 0, 0,
-        x + width, y + height, red, green, blue, alpha, 1, 1,
-        // Triangle 2
-        x + width, y, red, green, blue, alpha, 1, 0,
-        x + width, y + height, red, green, blue, alpha, 1, 1,
-        x,  y, red, green, blue, alpha, 0, 0
+        // Quad (top left, bottom left, bottom right, top right), split into two triangles by the shared index buffer
+        x, y + height, red, green, blue, alpha, u0, v1,
+        x, y, red, green, blue, alpha, u0, v0,
+        x + width, y, red, green, blue, alpha, u1, v0,
+        x + width, y + height, red, green, blue, alpha, u1, v1
       }
     );
     
@@ -118,9 +118,10 @@ public class TriangleShape implements IShape {
       false,
       texture,
       new float[] {
-        x1, y1, red, green, blue, alpha, 0.5f, 1.0f,
-        x2, y2, red, green, blue, alpha, 0.0f, 0.0f,
-        x3, y3, red, green, blue, alpha, 1.0f, 0.0f
+        // Texture coordinates are mapped into the atlas page, if the texture was packed into an atlas
+        x1, y1, red, green, blue, alpha, texture.mapU(0.5f), texture.mapV(1.0f),
+        x2, y2, red, green, blue, alpha, texture.mapU(0.0f), texture.mapV(0.0f),
+        x3, y3, red, green, blue, alpha, texture.mapU(1.0f), texture.mapV(0.0f)
       }
     );
     
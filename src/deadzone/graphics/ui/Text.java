@@ -14,7 +14,7 @@ import deadzone.math.Vector2;
 import java.util.ArrayList;
 import java.util.Arrays;
 
-import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11.GL_QUADS;
 
 
 /**
@@ -22,7 +22,7 @@ import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
  */
 public class Text implements IRenderable {
   
-  private final static int glRenderType = GL_TRIANGLES;
+  private final static int glRenderType = GL_QUADS;
   private VertexBufferObject vbo;
   protected int vertexCount;
   public final Font font;
@@ -54,7 +54,7 @@ public class Text implements IRenderable {
     this.renderedText = text;
     this.color = color;
     this.scale = scale;
-    this.vertexCount = renderedText.length() * 6;
+    this.vertexCount = renderedText.length() * 4;
     calculateTotalSize();
   }
   
@@ -81,7 +81,7 @@ public class Text implements IRenderable {
   
   /**
    * Returns the total count of vertices the object have to form the text texture meshes
-   * Each letter is printed on a rectangle and therefore uses 2 triangle meshes.
+   * Each letter is printed on a quad and therefore uses 4 vertices.
    */
   @Override
   public int getVertexCount() {
@@ -118,8 +118,12 @@ public class Text implements IRenderable {
   
   public void setText(String newText) {
     renderedText = newText;
-    vertexCount = newText.length() * 6;
+    vertexCount = newText.length() * 4;
     calculateTotalSize();
+    // If the text is already resident in the GPU, regenerate its vertices so the VBO gets updated with the next draw
+    if (vbo != null) {
+      generateVBO();
+    }
   }
   
   public String getText() {
@@ -132,7 +136,8 @@ public class Text implements IRenderable {
   
   
   /**
-   * Registers all required VBOs at the renderer which are needed to render the given text.
+   * Generates the VBO which is needed to render the given text.
+   * If the VBO already exists, only its vertex data is replaced.
    * TODO: Text wird zwar richtig gerendert, aber die resultierende Pen Pos scheint nicht zu stimmen (mind. bei Zeilenumbrüchen)
    */
   private void generateVBO() {
@@ -148,10 +153,13 @@ public class Text implements IRenderable {
     final float alpha = color.getAlphaNormalized();
     final Texture fontAtlas = font.getAtlasTexture();
     float pxWidthOfLongestLine = 0;
+    // Start at the origin of the text, otherwise a regenerated text would be shifted by the previous pen moves
+    pen.setPos(xPos, yPos);
+    lineCount = 1;
     float totalWidth = 0;
     final ArrayList<Float> vertexData = new ArrayList<>();
     
-    // Iterate through the given text and create a texture (2 triangles each) at the correct location for each letter
+    // Iterate through the given text and create a texture (1 quad each) at the correct location for each letter
     for (int i = 0; i < renderedText.length(); i++) {
       float letterOffsetPx = 0;
       
@@ -198,14 +206,11 @@ public class Text implements IRenderable {
       vertexData.addAll(
         new ArrayList<>(
           Arrays.asList(
-            // Triangle 1
+            // Quad (top left, bottom left, bottom right, top right)
             currentPenPosX, currentPenPosY + sizeY_NormWin, red, green, blue, alpha, posX_NormTex, posY_NormTex,
             currentPenPosX, currentPenPosY, red, green, blue, alpha, posX_NormTex, posY_NormTex + sizeY_NormTex,
-            currentPenPosX + sizeX_NormWin, currentPenPosY + sizeY_NormWin, red, green, blue, alpha, posX_NormTex + sizeX_NormTex, posY_NormTex,
-            // Triangle 2
             currentPenPosX + sizeX_NormWin, currentPenPosY, red, green, blue, alpha, posX_NormTex + sizeX_NormTex, posY_NormTex + sizeY_NormTex,
-            currentPenPosX + sizeX_NormWin, currentPenPosY + sizeY_NormWin, red, green, blue, alpha, posX_NormTex + sizeX_NormTex, posY_NormTex,
-            currentPenPosX, currentPenPosY, red, green, blue, alpha, posX_NormTex, posY_NormTex + sizeY_NormTex
+            currentPenPosX + sizeX_NormWin, currentPenPosY + sizeY_NormWin, red, green, blue, alpha, posX_NormTex + sizeX_NormTex, posY_NormTex
           )
         )
       );
@@ -223,7 +228,13 @@ public class Text implements IRenderable {
       vertexDataArr[index++] = value;
     }
     
-    vbo = new VertexBufferObject(false, fontAtlas, vertexDataArr);
+    // Line breaks don't produce any vertices, so take the real count from the generated data
+    vertexCount = vertexDataArr.length / 8;
+    if (vbo == null) {
+      vbo = new VertexBufferObject(false, fontAtlas, vertexDataArr);
+    } else {
+      vbo.setVertexData(vertexDataArr);
+    }
     
     // Finally store the texts total size
     totalWidthPx = (int) Math.ceil(pxWidthOfLongestLine * scale);
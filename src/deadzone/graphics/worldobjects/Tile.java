@@ -2,11 +2,12 @@ package deadzone.graphics.worldobjects;
 
 import deadzone.Util;
 import deadzone.assets.Texture;
+import deadzone.graphics.Color;
 import deadzone.graphics.IIsoObject;
 import deadzone.graphics.IsoGrid;
 import deadzone.graphics.VertexBufferObject;
 
-import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11.GL_QUADS;
 
 
 /**
@@ -18,10 +19,10 @@ import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
 public class Tile implements IIsoObject {
   
   /** The mesh type so the renderer knows to which VAO the objects VBOs must be attached */
-  private static final int glRenderType = GL_TRIANGLES;
+  private static final int glRenderType = GL_QUADS;
   
   /** The sum of vertices of all VBOs of the object */
-  private static final int vertexCount = 6;
+  private static final int vertexCount = 4;
   
   /** VBO which will form the objects mesh in the GPU */
   private VertexBufferObject vbo;
@@ -37,6 +38,9 @@ public class Tile implements IIsoObject {
   
   private Texture texture;
   
+  /** Color which is multiplied with the texture (null means white, so the texture is drawn unchanged) */
+  private Color tint;
+  
   
   /**
    * Creates a new Tile
@@ -51,12 +55,30 @@ public class Tile implements IIsoObject {
   
   public void setTexture(Texture texture) {
     this.texture = texture;
+    if (vbo != null) {
+      // The texture coordinates change too, if the textures are on different atlas regions
+      vbo.setTexture(texture);
+      vbo.setVertexData(createVertexData());
+    }
+    grid.markTileChanged(this);
   }
   
   public Texture getTexture() {
     return this.texture;
   }
   
+  public void setTint(Color tint) {
+    this.tint = tint;
+    if (vbo != null) {
+      vbo.setVertexData(createVertexData());
+    }
+    grid.markTileChanged(this);
+  }
+  
+  public Color getTint() {
+    return tint;
+  }
+  
   /**
    * Returns the iso grid to which this Tile belongs to
    */
@@ -92,25 +114,7 @@ public class Tile implements IIsoObject {
     }
     
     // Create VBO which represents the given tile
-    float xNormalized = Util.normalizePixelWidth(x * grid.getTileWidth());
-    float yNormalized = Util.normalizePixelHeight(y * grid.getTileHeight());
-    float height = Util.normalizePixelHeight(grid.getTileHeight());
-    float width = Util.normalizePixelWidth(grid.getTileWidth());
-    
-    vbo = new VertexBufferObject(
-      true,
-      texture,
-      new float[] {
-        // Triangle 1
-        xNormalized, yNormalized + height, 1, 1, 1, 1, 0, 1,
-        xNormalized, yNormalized, 1, 1, 1, 1, 0, 0,
-        xNormalized + width, yNormalized + height, 1, 1, 1, 1, 1, 1,
-        // Triangle 2
-        xNormalized + width, yNormalized, 1, 1, 1, 1, 1, 0,
-        xNormalized + width, yNormalized + height, 1, 1, 1, 1, 1, 1,
-        xNormalized, yNormalized, 1, 1, 1, 1, 0, 0
-      }
-    );
+    vbo = new VertexBufferObject(true, texture, createVertexData());
     
     return vbo;
   }
@@ -120,4 +124,38 @@ public class Tile implements IIsoObject {
     return vertexCount;
   }
   
+  
+  /**
+   * Creates the vertex data of the quad which represents this tile
+   */
+  private float[] createVertexData() {
+    float xNormalized = Util.normalizePixelWidth(x * grid.getTileWidth());
+    float yNormalized = Util.normalizePixelHeight(y * grid.getTileHeight());
+    float height = Util.normalizePixelHeight(grid.getTileHeight());
+    float width = Util.normalizePixelWidth(grid.getTileWidth());
+    
+    // If no tint is given, we use white, because white is "neutral", so it does not affect the texture through the interpolation
+    final float red, green, blue, alpha;
+    if (tint == null) {
+      red = green = blue = alpha = 1;
+    } else {
+      red = tint.getRedNormalized();
+      green = tint.getGreenNormalized();
+      blue = tint.getBlueNormalized();
+      alpha = tint.getAlphaNormalized();
+    }
+    
+    // Texture coordinates within the atlas page, if the texture was packed into an atlas
+    final float u0 = texture.mapU(0), v0 = texture.mapV(0);
+    final float u1 = texture.mapU(1), v1 = texture.mapV(1);
+    
+    return new float[] {
+      // Quad (top left, bottom left, bottom right, top right), split into two triangles by the shared index buffer
+      xNormalized, yNormalized + height, red, green, blue, alpha, u0, v1,
+      xNormalized, yNormalized, red, green, blue, alpha, u0, v0,
+      xNormalized + width, yNormalized, red, green, blue, alpha, u1, v0,
+      xNormalized + width, yNormalized + height, red, green, blue, alpha, u1, v1
+    };
+  }
+  
 }
@@ -243,6 +243,23 @@ public class Matrix4x4 {
     return new Vector4(x, y, z, w);
   }
   
+  /**
+   * Multiplies a (x,y,z,w)-Vector to this matrix (this * param) and writes the product into the given result vector,
+   * which may be the same as the multiplied vector
+   * @return The result vector
+   */
+  public Vector4 multiply(Vector4 vector, Vector4 result) {
+    float x = this.x00 * vector.x + this.x01 * vector.y + this.x02 * vector.z + this.x03 * vector.w;
+    float y = this.x10 * vector.x + this.x11 * vector.y + this.x12 * vector.z + this.x13 * vector.w;
+    float z = this.x20 * vector.x + this.x21 * vector.y + this.x22 * vector.z + this.x23 * vector.w;
+    float w = this.x30 * vector.x + this.x31 * vector.y + this.x32 * vector.z + this.x33 * vector.w;
+    result.x = x;
+    result.y = y;
+    result.z = z;
+    result.w = w;
+    return result;
+  }
+  
   /**
    * Multiplies a 4x4 matrix this matrix (this * param)
    */
@@ -2,9 +2,14 @@ package deadzone.scenes;
 
 import deadzone.Deadzone;
 import deadzone.GameTimer;
+import deadzone.Profiler;
 import deadzone.Window;
 import deadzone.assets.AssetManager;
+import deadzone.graphics.GridIndex;
+import deadzone.graphics.IInterpolated;
+import deadzone.graphics.IIsoObject;
 import deadzone.graphics.IRenderable;
+import deadzone.graphics.IsoGrid;
 import deadzone.graphics.Renderer;
 import deadzone.graphics.fonts.Pen;
 
@@ -31,6 +36,21 @@ public abstract class AbstractScene {
    */
   LinkedHashMap<String, IRenderable> renderObjects = new LinkedHashMap<>();
   
+  /** All objects of the scene which are no iso objects (like UI elements), in the order they were added */
+  private final LinkedHashMap<String, IRenderable> screenObjects = new LinkedHashMap<>();
+  
+  /**
+   * All iso objects of the scene by their grid coordinates, so only the objects within the viewport are visited.
+   * Interpolated iso objects are not indexed, because their coordinates change with every tick and frame.
+   */
+  private final GridIndex<IIsoObject> isoObjects = new GridIndex<>();
+  
+  /** All interpolated iso objects of the scene, their coordinates are checked against the viewport in every frame */
+  private final LinkedHashMap<String, IIsoObject> movingIsoObjects = new LinkedHashMap<>();
+  
+  /** All objects of the scene which are rendered between the states of the last two simulation ticks */
+  private final LinkedHashMap<String, IInterpolated> interpolatedObjects = new LinkedHashMap<>();
+  
   protected final Deadzone game = Deadzone.getApplication();
   protected final GameTimer timer = Deadzone.getApplication().getTimer();
   protected final Window window = Deadzone.getApplication().getWindow();
@@ -69,7 +89,18 @@ public abstract class AbstractScene {
    * @param obj The new object to add
    */
   public void addObject(String id, IRenderable obj) {
+    removeObject(id);
     renderObjects.put(id, obj);
+    if (obj instanceof IIsoObject && obj instanceof IInterpolated) {
+      movingIsoObjects.put(id, (IIsoObject) obj);
+    } else if (obj instanceof IIsoObject) {
+      isoObjects.add((IIsoObject) obj);
+    } else {
+      screenObjects.put(id, obj);
+    }
+    if (obj instanceof IInterpolated) {
+      interpolatedObjects.put(id, (IInterpolated) obj);
+    }
   }
   
   public IRenderable getObjectById(String id) {
@@ -80,7 +111,24 @@ public abstract class AbstractScene {
    * Removes an existing object from the scene
    */
   public void removeObject(String id) {
-    renderObjects.remove(id);
+    final IRenderable obj = renderObjects.remove(id);
+    if (obj instanceof IIsoObject && obj instanceof IInterpolated) {
+      movingIsoObjects.remove(id);
+    } else if (obj instanceof IIsoObject) {
+      isoObjects.remove((IIsoObject) obj);
+    } else if (obj != null) {
+      screenObjects.remove(id);
+    }
+    interpolatedObjects.remove(id);
+  }
+  
+  
+  /**
+   * Returns the iso grid of the scene, which is used to find the iso objects within the viewport
+   * (null if the scene has no grid, then all iso objects are rendered)
+   */
+  public IsoGrid getGrid() {
+    return null;
   }
   
   
@@ -93,7 +141,27 @@ public abstract class AbstractScene {
   
   
   /**
-   * This is the update loop for the actual scene.
+   * Runs a single simulation tick of the actual scene. Called with the fixed tick rate of the settings,
+   * so it may run several times or not at all within a rendered frame.
+   * @param tickSeconds Simulated time of the tick in seconds
+   */
+  public void runTick(double tickSeconds) {
+    interpolatedObjects.forEach((id, obj) -> obj.storeState());
+    updateSimulation(tickSeconds);
+  }
+  
+  
+  /**
+   * This is the simulation step of the actual scene, which changes the game state. Runs once per tick.
+   * @param tickSeconds Simulated time of the tick in seconds
+   */
+  protected void updateSimulation(double tickSeconds) {
+  
+  }
+  
+  
+  /**
+   * This is the update loop for the actual scene, which runs once per rendered frame after the simulation ticks.
    */
   public void updateScene() {
     sendToRenderer();
@@ -105,10 +173,46 @@ public abstract class AbstractScene {
    */
   protected void sendToRenderer() {
     // Now after all objects are adjusted accordingly, they are sent to the renderer with all their updated data for the next render loop
+    Profiler.begin(Profiler.Zone.SEND_TO_RENDERER);
+    // Moving objects are rendered between the last two simulation states by the time which elapsed since the last tick
+    final float alpha = timer.getInterpolationAlpha();
+    interpolatedObjects.forEach((id, obj) -> obj.interpolate(alpha));
     Renderer renderer = Deadzone.getApplication().getRenderer();
-    renderObjects.forEach((id, obj) -> {
+    final IsoGrid grid = getGrid();
+    final int[] visibleRange = grid != null ? renderer.getVisibleRange(grid) : null;
+    if (visibleRange == null) {
+      renderObjects.forEach((id, obj) -> {
+        renderer.registerObject(obj);
+      });
+      Profiler.end();
+      return;
+    }
+    
+    // Only the iso objects within the viewport are visited, objects on screen (like UI elements) are always rendered
+    screenObjects.forEach((id, obj) -> {
       renderer.registerObject(obj);
     });
+    final int visibleIsoObjects = isoObjects.forEachInRange(visibleRange, renderer::registerObject);
+    int culledIsoObjects = isoObjects.size() - visibleIsoObjects;
+    for (IIsoObject obj : movingIsoObjects.values()) {
+      if (isInRange(obj, visibleRange)) {
+        renderer.registerObject(obj);
+      } else {
+        culledIsoObjects++;
+      }
+    }
+    renderer.countCulledObjects(culledIsoObjects);
+    Profiler.end();
+  }
+  
+  
+  /**
+   * Checks whether the coordinates of the iso object are within the inclusive range: min x, min y, max x, max y
+   */
+  private static boolean isInRange(IIsoObject obj, int[] range) {
+    final int x = obj.getXCoordinate();
+    final int y = obj.getYCoordinate();
+    return x >= range[0] && y >= range[1] && x <= range[2] && y <= range[3];
   }
   
   
@@ -1,7 +1,12 @@
 package deadzone.scenes;
 
+import deadzone.Profiler;
+import deadzone.Settings;
 import deadzone.assets.Texture;
+import deadzone.graphics.GLStateCache;
+import deadzone.graphics.GpuProfiler;
 import deadzone.graphics.IsoGrid;
+import deadzone.graphics.StreamingVertexBuffer;
 import deadzone.graphics.ui.Text;
 import deadzone.graphics.worldobjects.Tile;
 
@@ -24,36 +29,36 @@ public class Compound extends AbstractScene {
     
     final Texture texture_1_marked = assets.getTexture("1_marked");
     
-    // Add some Tiles to test the MVP projection
-    addObject("tile11",new Tile(grid, -2, -2, texture_1_marked));
-    addObject("tile21",new Tile(grid, -1, -2, texture_1_marked));
-    addObject("tile31",new Tile(grid, 0, -2, texture_1_marked));
-    addObject("tile41",new Tile(grid, 1, -2, texture_1_marked));
-    addObject("tile51",new Tile(grid, 2, -2, texture_1_marked));
+    // Add some Tiles to test the MVP projection (they are rendered together with their grid)
+    grid.addTile(new Tile(grid, -2, -2, texture_1_marked));
+    grid.addTile(new Tile(grid, -1, -2, texture_1_marked));
+    grid.addTile(new Tile(grid, 0, -2, texture_1_marked));
+    grid.addTile(new Tile(grid, 1, -2, texture_1_marked));
+    grid.addTile(new Tile(grid, 2, -2, texture_1_marked));
     
-    addObject("tile12",new Tile(grid, -2, -1, texture_1_marked));
-    addObject("tile22",new Tile(grid, -1, -1, texture_1_marked));
-    addObject("tile32",new Tile(grid, 0, -1, texture_1_marked));
-    addObject("tile42",new Tile(grid, 1, -1, texture_1_marked));
-    addObject("tile52",new Tile(grid, 2, -1, texture_1_marked));
+    grid.addTile(new Tile(grid, -2, -1, texture_1_marked));
+    grid.addTile(new Tile(grid, -1, -1, texture_1_marked));
+    grid.addTile(new Tile(grid, 0, -1, texture_1_marked));
+    grid.addTile(new Tile(grid, 1, -1, texture_1_marked));
+    grid.addTile(new Tile(grid, 2, -1, texture_1_marked));
     
-    addObject("tile13",new Tile(grid, -2, 0, texture_1_marked));
-    addObject("tile23",new Tile(grid, -1, 0, texture_1_marked));
-    addObject("tile33",new Tile(grid, 0, 0, texture_1_marked));
-    addObject("tile43",new Tile(grid, 1, 0, texture_1_marked));
-    addObject("tile54",new Tile(grid, 2, 0, texture_1_marked));
+    grid.addTile(new Tile(grid, -2, 0, texture_1_marked));
+    grid.addTile(new Tile(grid, -1, 0, texture_1_marked));
+    grid.addTile(new Tile(grid, 0, 0, texture_1_marked));
+    grid.addTile(new Tile(grid, 1, 0, texture_1_marked));
+    grid.addTile(new Tile(grid, 2, 0, texture_1_marked));
     
-    addObject("tile15",new Tile(grid, -2, 1, texture_1_marked));
-    addObject("tile25",new Tile(grid, -1, 1, texture_1_marked));
-    addObject("tile35",new Tile(grid, 0, 1, texture_1_marked));
-    addObject("tile45",new Tile(grid, 1, 1, texture_1_marked));
-    addObject("tile55",new Tile(grid, 2, 1, texture_1_marked));
+    grid.addTile(new Tile(grid, -2, 1, texture_1_marked));
+    grid.addTile(new Tile(grid, -1, 1, texture_1_marked));
+    grid.addTile(new Tile(grid, 0, 1, texture_1_marked));
+    grid.addTile(new Tile(grid, 1, 1, texture_1_marked));
+    grid.addTile(new Tile(grid, 2, 1, texture_1_marked));
     
-    addObject("tile16",new Tile(grid, -2, 2, texture_1_marked));
-    addObject("tile26",new Tile(grid, -1, 2, texture_1_marked));
-    addObject("tile36",new Tile(grid, 0, 2, texture_1_marked));
-    addObject("tile46",new Tile(grid, 1, 2, texture_1_marked));
-    addObject("tile56",new Tile(grid, 2, 2, texture_1_marked));
+    grid.addTile(new Tile(grid, -2, 2, texture_1_marked));
+    grid.addTile(new Tile(grid, -1, 2, texture_1_marked));
+    grid.addTile(new Tile(grid, 0, 2, texture_1_marked));
+    grid.addTile(new Tile(grid, 1, 2, texture_1_marked));
+    grid.addTile(new Tile(grid, 2, 2, texture_1_marked));
 
     // Render a triangle to test rendering of no-iso objects like UI Elements
     addObject(
@@ -76,10 +81,13 @@ public class Compound extends AbstractScene {
   public void updateScene() {
     
     if (game.isDebugMode()) {
+      Profiler.begin(Profiler.Zone.DEBUG_INFOS);
       updateDebugInfos();
+      Profiler.end();
     }
     
     // Register objects for rendering  // TODO: Maybe omit this here and let the renderer grab all registered objects itself? Check Pro/Con!
+    game.getRenderer().registerGrid(grid);
     sendToRenderer();
   }
   
@@ -89,6 +97,7 @@ public class Compound extends AbstractScene {
   /**
    * Returns the compounds iso grid
    */
+  @Override
   public IsoGrid getGrid() {
     return grid;
   }
@@ -102,6 +111,12 @@ public class Compound extends AbstractScene {
     pen.setColor(255, 255, 255).setPos(-1, 1).setFontSize(20);
     addObject("timeLbl",  pen.writeText("Time:\n"));
     addObject("fpsLbl", pen.writeText("FPS:\n"));
+    addObject("frameTimeLbl", pen.writeText("Frame Time:\n"));
+    addObject("batchLbl", pen.writeText("Batches:\n"));
+    addObject("glCallsLbl", pen.writeText("GL Calls:\n"));
+    addObject("fenceLbl", pen.writeText("Fence Waits:\n"));
+    addObject("cullingLbl", pen.writeText("Objects:\n"));
+    addObject("gpuLbl", pen.writeText("GPU Time:\n"));
     addObject("coordLbl", pen.writeText("Mouse Pos:"));
   }
   
@@ -122,7 +137,54 @@ public class Compound extends AbstractScene {
     removeObject("fps");
     final Text fpsLbl = ((Text) renderObjects.get("fpsLbl"));
     pen.setPos(fpsLbl.getX() + fpsLbl.getTotalWidth() + .05f, fpsLbl.getY());
-    addObject("fps", pen.writeText("" + timer.getFps()));
+    addObject("fps", pen.writeText(timer.getFps() + String.format(" (1%% low %.0f)", timer.getOnePercentLowFps())));
+
+    // Update the frame time statistics of the last frames
+    removeObject("frameTime");
+    final Text frameTimeLbl = ((Text) renderObjects.get("frameTimeLbl"));
+    pen.setPos(frameTimeLbl.getX() + frameTimeLbl.getTotalWidth() + .05f, frameTimeLbl.getY());
+    addObject("frameTime", pen.writeText(String.format("%.2f ms (avg %.2f, p50 %.2f, p95 %.2f, p99 %.2f, max %.2f)",
+      timer.getFrameMillis(), timer.getAverageFrameMillis(), timer.getPercentileFrameMillis(50),
+      timer.getPercentileFrameMillis(95), timer.getPercentileFrameMillis(99), timer.getMaxFrameMillis())));
+
+    // Update draw calls of the last frame
+    removeObject("batches");
+    final Text batchLbl = ((Text) renderObjects.get("batchLbl"));
+    pen.setPos(batchLbl.getX() + batchLbl.getTotalWidth() + .05f, batchLbl.getY());
+    addObject("batches", pen.writeText("" + game.getRenderer().getBatchCount()));
+
+    // Update issued/avoided state changes of the last frame
+    removeObject("glCalls");
+    final Text glCallsLbl = ((Text) renderObjects.get("glCallsLbl"));
+    pen.setPos(glCallsLbl.getX() + glCallsLbl.getTotalWidth() + .05f, glCallsLbl.getY());
+    addObject("glCalls", pen.writeText(GLStateCache.getIssuedCalls() + " issued, " + GLStateCache.getAvoidedCalls() + " avoided"));
+
+    // Update how often the CPU had to wait for the GPU before it could reuse the streaming vertex buffer
+    removeObject("fenceWaits");
+    final StreamingVertexBuffer vertexStream = game.getRenderer().getVertexStream();
+    final Text fenceLbl = ((Text) renderObjects.get("fenceLbl"));
+    pen.setPos(fenceLbl.getX() + fenceLbl.getTotalWidth() + .05f, fenceLbl.getY());
+    addObject("fenceWaits", pen.writeText(vertexStream.getWaitCount() + " (" + String.format("%.2f", vertexStream.getWaitNanos() / 1e6) + " ms)"));
+
+    // Update drawn/culled objects of the last frame
+    removeObject("culling");
+    final Text cullingLbl = ((Text) renderObjects.get("cullingLbl"));
+    pen.setPos(cullingLbl.getX() + cullingLbl.getTotalWidth() + .05f, cullingLbl.getY());
+    addObject("culling", pen.writeText(game.getRenderer().getDrawnObjectCount() + " drawn, " + game.getRenderer().getCulledObjectCount() + " culled, "
+      + game.getRenderer().getSubmittedTileCount() + " tiles submitted"));
+
+    // Update the GPU time of each render pass, measured a few frames ago
+    removeObject("gpuTime");
+    final GpuProfiler gpuProfiler = game.getRenderer().getGpuProfiler();
+    final Text gpuLbl = ((Text) renderObjects.get("gpuLbl"));
+    pen.setPos(gpuLbl.getX() + gpuLbl.getTotalWidth() + .05f, gpuLbl.getY());
+    final String gpuTime;
+    if (gpuProfiler != null) {
+      gpuTime = formatGpuTime(gpuProfiler);
+    } else {
+      gpuTime = Settings.gpuTimers ? "not supported" : "disabled";
+    }
+    addObject("gpuTime", pen.writeText(gpuTime));
 
     // Update current mouse coordinates
     removeObject("coords");
@@ -131,4 +193,23 @@ public class Compound extends AbstractScene {
     
   }
   
+  
+  /**
+   * Returns the GPU time of the whole frame followed by the time of each pass
+   */
+  private static String formatGpuTime(GpuProfiler gpuProfiler) {
+    // All values are taken from the same frame
+    final long[] passNanos = gpuProfiler.getPassNanos();
+    long frameNanos = 0;
+    final StringBuilder passes = new StringBuilder();
+    for (GpuProfiler.Pass pass : GpuProfiler.Pass.values()) {
+      if (pass.ordinal() > 0) {
+        passes.append(", ");
+      }
+      passes.append(pass.label).append(String.format(" %.2f", passNanos[pass.ordinal()] / 1e6));
+      frameNanos += passNanos[pass.ordinal()];
+    }
+    return String.format("%.2f ms (", frameNanos / 1e6) + passes + ')';
+  }
+  
 }